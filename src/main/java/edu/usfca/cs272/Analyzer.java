@@ -0,0 +1,230 @@
+package edu.usfca.cs272;
+
+import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Turns lines of text into stems, the one place the indexing and the query
+ * processors get their words from so both always agree. Each thread that uses an
+ * analyzer gets its own {@link WordTokenizer}, stemmer and {@link TextFileReader}
+ * the first time, and reuses them for every line and file after that, so
+ * analyzing a line, a file or a query does not set anything up.
+ *
+ * Queries are turned into a {@link Query} with their unique sorted stems and the
+ * canonical key used for the results, built once.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class Analyzer {
+	/** The analyzer used by default, stemming English through the shared stem cache */
+	public static final Analyzer DEFAULT = new Analyzer(() -> StemCache.SHARED);
+
+	/** The tokenizer and stemmer of each thread */
+	private final ThreadLocal<State> states;
+
+	/**
+	 * Initializes an analyzer that stems English without a cache.
+	 */
+	public Analyzer() {
+		this(() -> new SnowballStemmer(ENGLISH));
+	}
+
+	/**
+	 * Initializes an analyzer with its own kind of stemmer.
+	 *
+	 * @param stemmers creates the stemmer of a thread, called once per thread, and
+	 *   may return the same thread-safe stemmer every time
+	 */
+	public Analyzer(Supplier<? extends Stemmer> stemmers) {
+		this.states = ThreadLocal.withInitial(() -> new State(stemmers.get()));
+	}
+
+	/**
+	 * Passes every stem of a line to an action, in the order of the words. The
+	 * action must not use this analyzer itself, since it runs in the middle of the
+	 * thread's tokenizer.
+	 *
+	 * @param line the line to clean, split, and stem
+	 * @param action what to do with each stem
+	 */
+	public void forEachStem(String line, Consumer<String> action) {
+		State state = states.get();
+		WordTokenizer tokenizer = state.tokenizer;
+		tokenizer.reset(line);
+
+		while (tokenizer.next()) {
+			action.accept(state.stemmer.stem(tokenizer.word()).toString());
+		}
+	}
+
+	/**
+	 * Passes every stem of a text file to an action, in the order of the words. The
+	 * file is read in chunks and each line is tokenized straight out of the chunk,
+	 * giving the same stems as analyzing it line by line.
+	 *
+	 * @param path the text file to read
+	 * @param action what to do with each stem, which must not use this analyzer
+	 * @throws IOException if the file cannot be read or is not valid UTF-8
+	 */
+	public void forEachStem(Path path, Consumer<String> action) throws IOException {
+		forEachStem(path, 0, Long.MAX_VALUE, action);
+	}
+
+	/**
+	 * Passes every stem of part of a text file to an action, in the order of the
+	 * words.
+	 *
+	 * @param path the text file to read
+	 * @param from the offset of the first byte to read, at the start of a line
+	 * @param to the offset just past the last byte to read
+	 * @param action what to do with each stem, which must not use this analyzer
+	 * @throws IOException if the file cannot be read or is not valid UTF-8
+	 * @see TextFileReader#forEachLine(Path, long, long, TextFileReader.LineAction)
+	 */
+	public void forEachStem(Path path, long from, long to, Consumer<String> action) throws IOException {
+		State state = states.get();
+		WordTokenizer tokenizer = state.tokenizer;
+
+		state.reader.forEachLine(path, from, to, (chars, start, end) -> {
+			tokenizer.reset(chars, start, end);
+
+			while (tokenizer.next()) {
+				action.accept(state.stemmer.stem(tokenizer.word()).toString());
+			}
+		});
+	}
+
+	/**
+	 * Adds every stem of a line to a collection.
+	 *
+	 * @param line the line to clean, split, and stem
+	 * @param stems the collection to add the stems to
+	 */
+	public void addStems(String line, Collection<String> stems) {
+		forEachStem(line, stems::add);
+	}
+
+	/**
+	 * Returns the unique stems of a line, sorted.
+	 *
+	 * @param line the line to clean, split, and stem
+	 * @return a new sorted set of the stems
+	 */
+	public TreeSet<String> uniqueStems(String line) {
+		TreeSet<String> stems = new TreeSet<>();
+		addStems(line, stems);
+		return stems;
+	}
+
+	/**
+	 * Analyzes a line of a query file.
+	 *
+	 * @param line the query text
+	 * @return the query with its stems and key
+	 */
+	public Query query(String line) {
+		return new Query(uniqueStems(line));
+	}
+
+	/**
+	 * Returns only the canonical key of a query, the key its results are kept under.
+	 *
+	 * @param line the query text
+	 * @return the unique sorted stems joined by spaces
+	 */
+	public String queryKey(String line) {
+		return query(line).getKey();
+	}
+
+	/**
+	 * The reusable state of one thread.
+	 */
+	private static class State {
+		/** The tokenizer of the thread */
+		private final WordTokenizer tokenizer;
+
+		/** The stemmer of the thread */
+		private final Stemmer stemmer;
+
+		/** The file reader of the thread */
+		private final TextFileReader reader;
+
+		/**
+		 * Initializes the state of a thread.
+		 *
+		 * @param stemmer the stemmer of the thread
+		 */
+		public State(Stemmer stemmer) {
+			this.tokenizer = new WordTokenizer();
+			this.stemmer = stemmer;
+			this.reader = new TextFileReader();
+		}
+	}
+
+	/**
+	 * An analyzed query, its unique sorted stems and the canonical key that two
+	 * lines with the same stems share.
+	 */
+	public static class Query {
+		/** The unique stems, sorted */
+		private final Set<String> stems;
+
+		/** The stems joined by spaces */
+		private final String key;
+
+		/**
+		 * Initializes a query from its stems.
+		 *
+		 * @param stems the unique sorted stems, which are kept and must not change
+		 */
+		public Query(TreeSet<String> stems) {
+			this.stems = Collections.unmodifiableSet(stems);
+			this.key = String.join(" ", stems);
+		}
+
+		/**
+		 * Returns the unique stems of the query, sorted.
+		 *
+		 * @return an unmodifiable view of the stems
+		 */
+		public Set<String> getStems() {
+			return stems;
+		}
+
+		/**
+		 * Returns the canonical key of the query.
+		 *
+		 * @return the stems joined by spaces
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Checks if the query has no stems, in which case it is not searched.
+		 *
+		 * @return true if there are no stems
+		 */
+		public boolean isEmpty() {
+			return stems.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return key;
+		}
+	}
+}
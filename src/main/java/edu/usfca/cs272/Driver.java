@@ -2,6 +2,14 @@ package edu.usfca.cs272;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
 
 /**
  * Class responsible for running this project based on the provided command-line
@@ -12,6 +20,11 @@ import java.nio.file.Path;
  * @version Fall 2023
  */
 public class Driver {
+	/** Logger to use for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** Logger for the reports on how a run went, shown with the -stats flag */
+	private static final Logger stats = LogManager.getLogger("stats");
 
 	/**
 	 * Start of the program.
@@ -20,6 +33,12 @@ public class Driver {
 	 */
 	public static void main(String[] args){
 		ArgumentParser parser = new ArgumentParser(args);
+
+		/** Prints the reports on how the run went, which are off by default*/
+		if (parser.hasFlag("-stats")) {
+			Configurator.setLevel("stats", Level.INFO);
+		}
+
 		InvertedIndex index = null;
 		ThreadSafeInvertedIndex safe = null;
 		WorkQueue workQueue = null;
@@ -27,70 +46,300 @@ public class Driver {
 		/** Boolean flag to determine exact/partial search*/
 		boolean isPartial = parser.hasFlag("-partial");
 
+		/** Boolean flag to delta and varint pack the position lists*/
+		boolean isPacked = parser.hasFlag("-packed");
+
+		/** Boolean flag to build the index out of merged segments*/
+		boolean isSegmented = parser.hasFlag("-segments");
+
+		/** The number of segments in a tier before they are merged*/
+		int mergeFactor = Math.max(2, parser.getPositiveInteger("-segments", SegmentedInvertedIndex.DEFAULT_MERGE_FACTOR));
+
+		/** Boolean flag to split the index into shards by word hash*/
+		boolean isSharded = parser.hasFlag("-shards");
+
+		/** The most results to keep for each query, only the best are kept with -top*/
+		int limit = parser.hasFlag("-top") ? parser.getPositiveInteger("-top", 10) : InvertedIndex.ALL_RESULTS;
+
 		/** QueryProcessor object for search*/
 		QueryInterface processor = null;
 
+		/** Whether the index was loaded from an earlier run*/
+		boolean isLoaded = false;
+
+		/** The files indexed incrementally, only written out together with the saved index*/
+		IndexManifest manifest = null;
+
+		/** Whether a full work queue turned work away, so what is left to write would be missing parts*/
+		boolean isIncomplete = false;
+
 		/** Logic to determine multi-threading or not*/
 		if (parser.hasFlag("-threads")) {
 			index = new ThreadSafeInvertedIndex();
 			
-			safe = new ThreadSafeInvertedIndex();
+			int threads = parser.getPositiveInteger("-threads", 5);
+
+			/** The most tasks waiting at once, producers are held back by the overflow policy after that*/
+			int capacity = parser.hasFlag("-capacity") ? parser.getPositiveInteger("-capacity", 1000) : WorkQueue.UNBOUNDED;
+			WorkQueue.Overflow overflow = WorkQueue.Overflow.of(parser.getString("-overflow"), WorkQueue.Overflow.BLOCK);
+
+			/** Workers with their own deques that steal from each other, instead of one shared list*/
+			if (parser.hasFlag("-steal")) {
+				workQueue = new WorkStealingQueue(threads, capacity, overflow);
+			} else {
+				workQueue = new WorkQueue(threads, capacity, overflow);
+			}
+
+			/** Grow and shrink the workers between the bounds as the work changes, starting from -threads*/
+			if (parser.hasFlag("-adaptive")) {
+				int max = parser.getPositiveInteger("-adaptive", Math.max(threads, 2 * Runtime.getRuntime().availableProcessors()));
+
+				try {
+					workQueue.adapt(parser.getPositiveInteger("-minthreads", 1), max);
+				} catch (UnsupportedOperationException e) {
+					System.out.println("Error making the work queue adaptive: " + e.getMessage());
+				}
+			}
+
+			/** The share of tasks taken from the high, normal, and low priority lanes*/
+			if (parser.hasFlag("-weights")) {
+				String[] weights = parser.getString("-weights", "").split(",");
+				WorkQueue.Priority[] priorities = WorkQueue.Priority.values();
+
+				try {
+					for (int i = 0; i < weights.length && i < priorities.length; i++) {
+						workQueue.setWeight(priorities[i], Integer.parseInt(weights[i].strip()));
+					}
+				} catch (NumberFormatException e) {
+					System.out.println("Error parsing weights: " + e.getMessage());
+				}
+			}
+
+			if (isSharded) {
+				safe = new ShardedInvertedIndex(workQueue, parser.getPositiveInteger("-shards", workQueue.size()), isPacked);
+			} else if (isSegmented) {
+				safe = new SegmentedInvertedIndex(workQueue, mergeFactor);
+			} else {
+				safe = new ThreadSafeInvertedIndex(isPacked);
+			}
 			index = safe;
-			
-			workQueue = new WorkQueue(parser.getPositiveInteger("-threads", 5));
-			processor = new MultiThreadQueryProcessor(safe, isPartial, workQueue);
+		} else if (isSharded) {
+			index = new ShardedInvertedIndex(null, parser.getPositiveInteger("-shards", WorkQueue.DEFAULT), isPacked);
+		} else if (isSegmented) {
+			index = new SegmentedInvertedIndex(null, mergeFactor);
 		} else {
-			index = new InvertedIndex();
-			processor = new QueryProcessor(index, isPartial);
+			index = new InvertedIndex(isPacked);
+		}
+
+		if (parser.hasFlag("-load")) {
+			try {
+				FrozenInvertedIndex loaded = FrozenInvertedIndex.mapSegment(parser.getPath("-load"));
+
+				// More text needs a mutable index, otherwise search the mapped segment directly
+				if (parser.hasFlag("-text")) {
+					loaded.thaw(index);
+				} else {
+					index = loaded;
+				}
+				isLoaded = true;
+			} catch (IOException | NullPointerException e) {
+				System.out.println("Error loading index: " + e.getMessage());
+			}
 		}
 
-		if (parser.hasFlag("-text")) {
+		if (parser.hasFlag("-text") && parser.hasFlag("-incremental")) {
+			Path manifestPath = parser.getPath("-incremental", Path.of("index.manifest"));
+
+			try {
+				// Without the earlier index, every file has to be indexed again
+				IndexManifest updated = isLoaded ? IndexManifest.read(manifestPath) : new IndexManifest();
+
+				if (safe != null && workQueue != null) {
+					MultiThreadInvertedIndexProcessor.processIncremental(parser.getPath("-text"), safe, workQueue, updated);
+				} else {
+					InvertedIndexProcessor.processIncremental(parser.getPath("-text"), index, updated);
+				}
+
+				manifest = updated;
+			} catch (IOException | NullPointerException e) {
+				System.out.println("Error processing text: " + e.getMessage());
+			} catch (RejectedExecutionException e) {
+				System.out.println("Error processing text: " + e.getMessage());
+				isIncomplete = true;
+			}
+		} else if (parser.hasFlag("-text")) {
 			try {
 				if (safe != null && workQueue != null) {
-					MultiThreadInvertedIndexProcessor.processText(parser.getPath("-text"), safe, workQueue);
+					boolean isPerWorker = parser.hasFlag("-local");
+					int maxTasks = parser.hasFlag("-maxtasks") ? parser.getPositiveInteger("-maxtasks", 4 * workQueue.size()) : MultiThreadInvertedIndexProcessor.UNBOUNDED;
+					if (parser.hasFlag("-lpt")) {
+						MultiThreadInvertedIndexProcessor.processTextLargestFirst(parser.getPath("-text"), safe, workQueue, maxTasks, isPerWorker);
+					} else {
+						MultiThreadInvertedIndexProcessor.processText(parser.getPath("-text"), safe, workQueue, maxTasks, isPerWorker);
+					}
 				} else {
 					InvertedIndexProcessor.processText(parser.getPath("-text"), index);
 				}
 			} catch (IOException | NullPointerException e) {
 				System.out.println("Error Detected:");
 				System.out.println("Error processing text: " + e.getMessage());
+			} catch (RejectedExecutionException e) {
+				System.out.println("Error processing text: " + e.getMessage());
+				isIncomplete = true;
 			}
 		}
 
+		/** Tasks queued before an error still have to finish before the index is used*/
+		if (workQueue != null) {
+			workQueue.finish();
+		}
+
+		/** The index is only read from here on, so searches can use a lock-free snapshot, the shards and segments already search their parts on their own*/
+		if (!isSharded && !isSegmented) {
+			try {
+				index = index.freeze();
+			} catch (IllegalStateException e) {
+				// too big for the frozen layout, so the index is searched as it is
+				System.out.println("Error freezing index: " + e.getMessage());
+			}
+		}
+
+		/** Writing the index out and searching it are separate jobs that overlap on the same workers*/
+		TaskGroup output = workQueue != null ? workQueue.group() : null;
+		TaskGroup queries = workQueue != null ? workQueue.group() : null;
+
+		if (isIncomplete) {
+			System.out.println("Not writing the index, it is missing files the work queue turned away");
+		} else {
+			writeIndex(parser, index, manifest, output);
+		}
+
+		if (queries != null) {
+			processor = new MultiThreadQueryProcessor(index, isPartial, queries, limit);
+		} else {
+			processor = new QueryProcessor(index, isPartial, limit);
+		}
+
 		if (parser.hasFlag("-query")) {
 			try {
 				processor.processQuery(parser.getPath("-query"));
 			} catch (IOException | NullPointerException e) {
 				System.out.println("Error processing query: " + e.getMessage());
+			} catch (RejectedExecutionException e) {
+				System.out.println("Error processing query: " + e.getMessage());
+				isIncomplete = true;
 			}
 		}
 
 		if (workQueue != null) {
+			try {
+				queries.finish();
+				output.finish();
+			} catch (InterruptedException e) {
+				// some searches or writes may still be pending, so nothing more is written
+				queries.cancel();
+				output.cancel();
+				System.out.println("Interrupted before the queries and output finished");
+				Thread.currentThread().interrupt();
+				workQueue.shutdown();
+				return;
+			}
+
+			log.debug("Queries: {}; output: {}", queries, output);
+			stats.info("Work queue: {} workers, {} tasks waiting at most of {}, {} overflowed", workQueue.size(),
+					workQueue.highWaterMark(), workQueue.capacity() == WorkQueue.UNBOUNDED ? "unbounded" : workQueue.capacity(),
+					workQueue.overflowed());
+
+			for (WorkQueue.Priority priority : WorkQueue.Priority.values()) {
+				WaitStats waits = workQueue.waitStats(priority);
+
+				if (waits.count() > 0) {
+					stats.info("{} priority: {}", priority, waits);
+				}
+			}
 			workQueue.shutdown();
 		}
 
-		if (parser.hasFlag("-counts")) {
+		stats.info("Stem cache: {}", StemCache.SHARED);
+
+		if (parser.hasFlag("-results") && isIncomplete) {
+			System.out.println("Not writing results, some queries were turned away or the index is incomplete");
+		} else if (parser.hasFlag("-results")) {
 			try {
-				index.writeCounts(parser.getPath("-counts", Path.of("counts.json")));
+				processor.writeResults(parser.getPath("-results", Path.of("results.json")));
 			} catch (IOException e) {
-				System.out.println("Error processing counts: " + e.getMessage());
+				System.out.println("Error processing results: " + e.getMessage());
 			}
 		}
+	}
+
+	/**
+	 * Writes out the index files asked for, as tasks of a group if there is one so
+	 * they are written while the queries are searched.
+	 *
+	 * The manifest of an incremental run describes the saved index, so it is only
+	 * written once that index is saved. Without -save it is not written at all,
+	 * since the next run could not load the changes it lists.
+	 *
+	 * @param parser the command-line arguments
+	 * @param index the finished index
+	 * @param manifest the files in the index if it was built incrementally, or null
+	 * @param output the group to write on, or null to write right away
+	 */
+	private static void writeIndex(ArgumentParser parser, InvertedIndex index, IndexManifest manifest, TaskGroup output) {
+		List<Runnable> writes = new ArrayList<>();
+
+		if (parser.hasFlag("-save")) {
+			writes.add(() -> {
+				try {
+					index.writeSegment(parser.getPath("-save", Path.of("index.bin")));
+				} catch (IOException e) {
+					System.out.println("Error saving index: " + e.getMessage());
+					return;
+				}
+
+				if (manifest != null) {
+					try {
+						manifest.write(parser.getPath("-incremental", Path.of("index.manifest")));
+					} catch (IOException e) {
+						System.out.println("Error saving manifest: " + e.getMessage());
+					}
+				}
+			});
+		}
+
+		if (parser.hasFlag("-counts")) {
+			writes.add(() -> {
+				try {
+					index.writeCounts(parser.getPath("-counts", Path.of("counts.json")));
+				} catch (IOException e) {
+					System.out.println("Error processing counts: " + e.getMessage());
+				}
+			});
+		}
 
 		if (parser.hasFlag("-index")) {
-			try {
-				index.writeIndex(parser.getPath("-index", Path.of("index.json")));
-			} catch (IOException e) {
-				System.out.println("Error processing index: " + e.getMessage());
-			}
+			writes.add(() -> {
+				try {
+					index.writeIndex(parser.getPath("-index", Path.of("index.json")));
+				} catch (IOException e) {
+					System.out.println("Error processing index: " + e.getMessage());
+				}
+			});
 		}
 
-		if (parser.hasFlag("-results")) {
+		for (Runnable write : writes) {
+			if (output == null) {
+				write.run();
+				continue;
+			}
+
 			try {
-				processor.writeResults(parser.getPath("-results", Path.of("results.json")));
-			} catch (IOException e) {
-				System.out.println("Error processing results: " + e.getMessage());
+				output.execute(write);
+			} catch (RejectedExecutionException e) {
+				// a full queue that rejects tasks still has to write the files
+				write.run();
 			}
 		}
 	}
-}
\ No newline at end of file
+}
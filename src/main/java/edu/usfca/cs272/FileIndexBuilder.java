@@ -0,0 +1,148 @@
+package edu.usfca.cs272;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the words of a single file before they are added to an
+ * {@link InvertedIndex}. Positions within a file only ever increase, so each word
+ * keeps an append-only {@link PositionList} and adding a word is one hash lookup
+ * with no ordering checks. The whole file is then merged into the index at once.
+ *
+ * Warning: This class is not thread-safe, each file should use its own builder.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class FileIndexBuilder {
+	/** The location of the file being indexed */
+	private final String location;
+
+	/** The positions of each word in the file */
+	private final HashMap<String, PositionList> words;
+	// Word : [1,2,3]
+
+	/** The position of the last word added */
+	private int position;
+
+	/** The number of words added */
+	private int size;
+
+	/**
+	 * Initializes an empty builder for a file.
+	 *
+	 * @param location the location of the file being indexed
+	 */
+	public FileIndexBuilder(String location) {
+		this.location = location;
+		this.words = new HashMap<>();
+		this.position = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Adds the next word of the file at the position after the last word.
+	 *
+	 * @param word the stemmed word to add
+	 */
+	public void add(String word) {
+		position++;
+		size++;
+
+		PositionList positions = words.get(word);
+		if (positions == null) {
+			positions = new PositionList();
+			words.put(word, positions);
+		}
+		positions.append(position);
+	}
+
+	/**
+	 * Adds every position of a word at once, for example when copying a file out
+	 * of another index. The word should not have been added already.
+	 *
+	 * @param word the stemmed word to add
+	 * @param positions the positions of the word in the file
+	 */
+	public void add(String word, PositionList positions) {
+		if (positions.isEmpty()) {
+			return;
+		}
+
+		words.put(word, positions);
+		size += positions.size();
+		position = Math.max(position, positions.last());
+	}
+
+	/**
+	 * Adds the words of the next part of the same file after the words already
+	 * added. The positions of the part started over from 1, so they are moved past
+	 * the last position of this builder, which is the number of words in all the
+	 * parts before it. The other builder should not be used afterwards.
+	 *
+	 * @param next the builder of the part of the file right after this one
+	 */
+	public void append(FileIndexBuilder next) {
+		int offset = position;
+
+		for (var entry : next.words.entrySet()) {
+			PositionList positions = words.get(entry.getKey());
+			if (positions == null) {
+				positions = new PositionList();
+				words.put(entry.getKey(), positions);
+			}
+
+			var iterator = entry.getValue().iterator();
+			while (iterator.hasNext()) {
+				positions.append(iterator.nextInt() + offset);
+			}
+		}
+
+		position += next.position;
+		size += next.size;
+	}
+
+	/**
+	 * Returns the location of the file being indexed.
+	 *
+	 * @return the file location
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * Returns the number of words added.
+	 *
+	 * @return the number of words in the file
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if any words have been added.
+	 *
+	 * @return true if no words were added
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the positions of each word in the file. The position lists are moved
+	 * into the index when merged, so the builder should not be used afterwards.
+	 *
+	 * @return an unmodifiable map of words to their positions
+	 */
+	public Map<String, PositionList> getWords() {
+		return Collections.unmodifiableMap(words);
+	}
+
+	@Override
+	public String toString() {
+		return location + "=" + words;
+	}
+}
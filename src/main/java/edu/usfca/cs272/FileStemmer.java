@@ -58,16 +58,25 @@ public class FileStemmer {
 	}
 
 	/**
-	 * Parses the text into an array of clean words.
+	 * Parses the text into an array of clean words. Gives the same words as
+	 * cleaning and then splitting the text, but in a single pass.
 	 *
 	 * @param text the text to clean and split
 	 * @return an array of {@link String} objects
 	 *
 	 * @see #clean(String)
-	 * @see #parse(String)
+	 * @see #split(String)
+	 * @see WordTokenizer
 	 */
 	public static String[] parse(String text) {
-		return split(clean(text));
+		ArrayList<String> words = new ArrayList<>();
+		WordTokenizer tokenizer = new WordTokenizer();
+		tokenizer.reset(text);
+
+		while (tokenizer.next()) {
+			words.add(tokenizer.word().toString());
+		}
+		return words.toArray(new String[0]);
 	}
 
 	/**
@@ -83,13 +92,13 @@ public class FileStemmer {
 	 * @see Collection#add(Object)
 	 */
 	public static void addStems(String line, Stemmer stemmer, Collection<String>stems) {
-		// Parse the input to individual words
-
-		String[] words = parse(line);
+		// Split the input into individual words without any regex
+		WordTokenizer tokenizer = new WordTokenizer();
+		tokenizer.reset(line);
 
 		// Loop through the series of words and apply the stemmer algorithm
-		for (String word : words) {
-			String stemWord = stemmer.stem(word).toString();
+		while (tokenizer.next()) {
+			String stemWord = stemmer.stem(tokenizer.word()).toString();
 
 			// Add the stem word into the collection
 			stems.add(stemWord);
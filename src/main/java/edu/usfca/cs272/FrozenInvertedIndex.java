@@ -0,0 +1,990 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable snapshot of an {@link InvertedIndex} for after the build phase,
+ * when the index is only read by queries and the JSON writers. Instead of nested
+ * maps and sets, the words are kept in one sorted array and the postings of every
+ * word are packed next to each other in flat arrays, so a search is a binary
+ * search followed by a linear scan.
+ *
+ * Locations are renumbered in path order when frozen, so the postings of each
+ * word are already in the order they are written out.
+ *
+ * Nothing can change after it is built, so this class is safe to share between
+ * threads without any locking. Use {@link InvertedIndex#freeze()} to create one.
+ *
+ * The flat arrays are held as buffers so the same layout can be saved as a binary
+ * segment file with {@link #writeSegment(Path)} and later memory-mapped straight
+ * back with {@link #mapSegment(Path)}, without rebuilding anything. A segment file
+ * is laid out as:
+ *
+ * <pre>
+ * int magic, int version, int words, int locations, int postings, int position bytes
+ * long[locations] word counts
+ * int[words + 1] word starts
+ * int[postings] posting locations
+ * int[postings] posting counts
+ * int[postings + 1] position starts
+ * byte[position bytes] positions
+ * the words, then the locations, each as an int length and UTF-8 bytes
+ * </pre>
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class FrozenInvertedIndex extends InvertedIndex {
+	/** Identifies a binary segment file */
+	private static final int MAGIC = 0x53454758;
+
+	/** The version of the binary segment layout */
+	private static final int VERSION = 1;
+
+	/** The size of the segment header in bytes */
+	private static final int HEADER = 6 * Integer.BYTES;
+
+	/** The largest array the layout can hold, everything in it is indexed by ints */
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/** The words of the index in sorted order */
+	private final String[] words;
+
+	/** The postings of word i are the entries from wordStarts[i] up to wordStarts[i + 1] */
+	private final IntBuffer wordStarts;
+
+	/** The location id of each posting */
+	private final IntBuffer postingLocations;
+
+	/** The number of positions of each posting */
+	private final IntBuffer postingCounts;
+
+	/** The positions of posting i are the bytes from positionStarts[i] up to positionStarts[i + 1] */
+	private final IntBuffer positionStarts;
+
+	/** The delta and varint encoded positions of every posting */
+	private final ByteBuffer positions;
+
+	/** The location dictionary sorted by path, the index of a path is its location id */
+	private final String[] locations;
+
+	/** The total words in each location, indexed by location id */
+	private final LongBuffer wordCounts;
+
+	/**
+	 * Builds a frozen copy of the data structures of an inverted index.
+	 *
+	 * @param index the words mapped to location ids and positions
+	 * @param locations the location dictionary of the index
+	 * @param wordCounts the total words of each location id
+	 *
+	 * @see InvertedIndex#freeze()
+	 */
+	public FrozenInvertedIndex(SortedMap<String, ? extends Map<Integer, PositionList>> index, List<String> locations, long[] wordCounts) {
+		// every word and location is kept in the arrays and buffers instead
+		super(false, false);
+
+		// Renumber the locations in path order
+		Integer[] order = new Integer[locations.size()];
+		for (int id = 0; id < order.length; id++) {
+			order[id] = id;
+		}
+		Arrays.sort(order, (a, b) -> locations.get(a).compareTo(locations.get(b)));
+
+		int[] remap = new int[order.length];
+		long[] counts = new long[order.length];
+		this.locations = new String[order.length];
+
+		for (int id = 0; id < order.length; id++) {
+			remap[order[id]] = id;
+			this.locations[id] = locations.get(order[id]);
+			counts[id] = wordCounts[order[id]];
+		}
+
+		long totalPostings = 0;
+		for (var locationMap : index.values()) {
+			totalPostings += locationMap.size();
+		}
+
+		int postings = arraySize(totalPostings + 1, "postings") - 1;
+
+		this.words = index.keySet().toArray(new String[0]);
+		int[] wordStarts = new int[words.length + 1];
+		int[] postingLocations = new int[postings];
+		int[] postingCounts = new int[postings];
+		int[] positionStarts = new int[postings + 1];
+
+		byte[] packed = new byte[(int) Math.min(MAX_ARRAY_SIZE, Math.max(16, postings * 4L))];
+		int length = 0;
+		int word = 0;
+		int posting = 0;
+
+		for (var locationMap : index.values()) {
+			wordStarts[word++] = posting;
+
+			Integer[] ids = locationMap.keySet().toArray(new Integer[0]);
+			Arrays.sort(ids, (a, b) -> Integer.compare(remap[a], remap[b]));
+
+			for (int id : ids) {
+				PositionList list = locationMap.get(id);
+				postingLocations[posting] = remap[id];
+				postingCounts[posting] = list.size();
+				positionStarts[posting] = length;
+
+				// at most 5 bytes per position
+				long needed = length + list.size() * 5L;
+				if (needed > packed.length) {
+					long grown = Math.min(MAX_ARRAY_SIZE, packed.length * 2L);
+					packed = Arrays.copyOf(packed, arraySize(Math.max(grown, needed), "position bytes"));
+				}
+
+				length = encodeTo(list, packed, length);
+				posting++;
+			}
+		}
+
+		wordStarts[word] = posting;
+		positionStarts[posting] = length;
+
+		this.wordCounts = LongBuffer.wrap(counts);
+		this.wordStarts = IntBuffer.wrap(wordStarts);
+		this.postingLocations = IntBuffer.wrap(postingLocations);
+		this.postingCounts = IntBuffer.wrap(postingCounts);
+		this.positionStarts = IntBuffer.wrap(positionStarts);
+		this.positions = ByteBuffer.wrap(Arrays.copyOf(packed, length));
+	}
+
+	/**
+	 * Wraps arrays that are already in the frozen layout.
+	 *
+	 * @param words the words in sorted order
+	 * @param wordStarts the first posting of each word, plus the total postings
+	 * @param postingLocations the location id of each posting
+	 * @param postingCounts the number of positions of each posting
+	 * @param positionStarts the first position byte of each posting, plus the total bytes
+	 * @param positions the delta and varint encoded positions
+	 * @param locations the locations in path order
+	 * @param wordCounts the total words of each location
+	 */
+	private FrozenInvertedIndex(String[] words, int[] wordStarts, int[] postingLocations, int[] postingCounts,
+			int[] positionStarts, byte[] positions, String[] locations, long[] wordCounts) {
+		super(false, false);
+		this.words = words;
+		this.wordStarts = IntBuffer.wrap(wordStarts);
+		this.postingLocations = IntBuffer.wrap(postingLocations);
+		this.postingCounts = IntBuffer.wrap(postingCounts);
+		this.positionStarts = IntBuffer.wrap(positionStarts);
+		this.positions = ByteBuffer.wrap(positions);
+		this.locations = locations;
+		this.wordCounts = LongBuffer.wrap(wordCounts);
+	}
+
+	/**
+	 * Merges several frozen indexes into one, leaving out some locations. Words are
+	 * merged in a single pass over the sorted word arrays and the encoded positions
+	 * are copied as they are, so nothing is decoded unless the same word and
+	 * location is in more than one index.
+	 *
+	 * @param segments the indexes to merge, which should not share locations
+	 * @param removed the locations to leave out of the merged index
+	 * @return the merged index
+	 */
+	public static FrozenInvertedIndex merge(List<FrozenInvertedIndex> segments, Set<String> removed) {
+		// The merged location dictionary, in path order
+		TreeSet<String> paths = new TreeSet<>();
+		long totalWords = 0;
+		long totalPostings = 0;
+		long totalBytes = 0;
+
+		for (FrozenInvertedIndex segment : segments) {
+			for (int id = 0; id < segment.locations.length; id++) {
+				if (segment.wordCounts.get(id) > 0 && !removed.contains(segment.locations[id])) {
+					paths.add(segment.locations[id]);
+				}
+			}
+			totalWords += segment.words.length;
+			totalPostings += segment.postingLocations.limit();
+			totalBytes += segment.positions.limit();
+		}
+
+		String[] locations = paths.toArray(new String[0]);
+		long[] counts = new long[locations.length];
+		int[][] remap = new int[segments.size()][];
+
+		for (int s = 0; s < remap.length; s++) {
+			FrozenInvertedIndex segment = segments.get(s);
+			remap[s] = new int[segment.locations.length];
+
+			for (int id = 0; id < remap[s].length; id++) {
+				int merged = removed.contains(segment.locations[id]) ? -1 : Arrays.binarySearch(locations, segment.locations[id]);
+				remap[s][id] = merged < 0 ? -1 : merged;
+
+				if (merged >= 0) {
+					counts[merged] += segment.wordCounts.get(id);
+				}
+			}
+		}
+
+		int numAllWords = arraySize(totalWords + 1, "words") - 1;
+		int numAllPostings = arraySize(totalPostings + 1, "postings") - 1;
+
+		String[] words = new String[numAllWords];
+		int[] wordStarts = new int[numAllWords + 1];
+		int[] postingLocations = new int[numAllPostings];
+		int[] postingCounts = new int[numAllPostings];
+		int[] positionStarts = new int[numAllPostings + 1];
+		byte[] positions = new byte[arraySize(totalBytes, "position bytes")];
+		int numWords = 0;
+		int numPostings = 0;
+		int length = 0;
+
+		// The next word of each segment
+		int[] cursors = new int[segments.size()];
+		List<long[]> postings = new ArrayList<>();
+
+		while (true) {
+			String word = null;
+			for (int s = 0; s < cursors.length; s++) {
+				String[] segmentWords = segments.get(s).words;
+				if (cursors[s] < segmentWords.length && (word == null || segmentWords[cursors[s]].compareTo(word) < 0)) {
+					word = segmentWords[cursors[s]];
+				}
+			}
+
+			if (word == null) {
+				break;
+			}
+
+			// Collect the postings of this word from every segment as {merged id, segment, posting}
+			postings.clear();
+			for (int s = 0; s < cursors.length; s++) {
+				FrozenInvertedIndex segment = segments.get(s);
+
+				if (cursors[s] < segment.words.length && segment.words[cursors[s]].equals(word)) {
+					int w = cursors[s]++;
+					for (int posting = segment.wordStarts.get(w); posting < segment.wordStarts.get(w + 1); posting++) {
+						int id = remap[s][segment.postingLocations.get(posting)];
+						if (id >= 0) {
+							postings.add(new long[] { id, s, posting });
+						}
+					}
+				}
+			}
+
+			if (postings.isEmpty()) {
+				continue;
+			}
+
+			postings.sort((a, b) -> Long.compare(a[0], b[0]));
+			words[numWords] = word;
+			wordStarts[numWords++] = numPostings;
+
+			for (int i = 0; i < postings.size(); i++) {
+				long[] posting = postings.get(i);
+				FrozenInvertedIndex segment = segments.get((int) posting[1]);
+				int index = (int) posting[2];
+
+				postingLocations[numPostings] = (int) posting[0];
+				positionStarts[numPostings] = length;
+
+				if (i + 1 < postings.size() && postings.get(i + 1)[0] == posting[0]) {
+					// Overlapping segments, so the positions have to be combined
+					PositionList combined = segment.decode(index);
+					while (i + 1 < postings.size() && postings.get(i + 1)[0] == posting[0]) {
+						long[] next = postings.get(++i);
+						combined.addAll(segments.get((int) next[1]).decode((int) next[2]));
+					}
+
+					postingCounts[numPostings] = combined.size();
+					length = encodeTo(combined, positions, length);
+				} else {
+					int start = segment.positionStarts.get(index);
+					int end = segment.positionStarts.get(index + 1);
+
+					postingCounts[numPostings] = segment.postingCounts.get(index);
+					segment.positions.get(start, positions, length, end - start);
+					length += end - start;
+				}
+
+				numPostings++;
+			}
+		}
+
+		wordStarts[numWords] = numPostings;
+		positionStarts[numPostings] = length;
+
+		return new FrozenInvertedIndex(Arrays.copyOf(words, numWords), Arrays.copyOf(wordStarts, numWords + 1),
+				Arrays.copyOf(postingLocations, numPostings), Arrays.copyOf(postingCounts, numPostings),
+				Arrays.copyOf(positionStarts, numPostings + 1), Arrays.copyOf(positions, length), locations, counts);
+	}
+
+	/**
+	 * Checks that an array fits in the frozen layout, which indexes everything
+	 * with ints. The words, postings and position bytes of an index that does not
+	 * fit cannot be frozen, so it fails clearly instead of overflowing.
+	 *
+	 * @param size the size of the array
+	 * @param what what the array holds, for the error message
+	 * @return the size as an int
+	 * @throws IllegalStateException if the array would be too large
+	 */
+	private static int arraySize(long size, String what) {
+		if (size > MAX_ARRAY_SIZE) {
+			throw new IllegalStateException(String.format(
+					"Too many %s to freeze the index: %d, the most is %d", what, size, MAX_ARRAY_SIZE));
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Delta and varint encodes positions into an array.
+	 *
+	 * @param list the positions to encode
+	 * @param bytes the array to write to, which must have room
+	 * @param offset the offset of the first byte to write
+	 * @return the offset after the last byte written
+	 */
+	private static int encodeTo(PositionList list, byte[] bytes, int offset) {
+		int previous = 0;
+		var iterator = list.iterator();
+
+		while (iterator.hasNext()) {
+			int next = iterator.nextInt();
+			int delta = next - previous;
+			previous = next;
+
+			while ((delta & ~0x7F) != 0) {
+				bytes[offset++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			bytes[offset++] = (byte) delta;
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Returns the number of postings, which is the number of word and location
+	 * pairs in the index.
+	 *
+	 * @return the number of postings
+	 */
+	public int numPostings() {
+		return postingLocations.limit();
+	}
+
+	/**
+	 * Checks if a location has any words in this index.
+	 *
+	 * @param location The file location.
+	 * @return True if the location has words, else False.
+	 */
+	public boolean hasLocation(String location) {
+		return numWordsInLocation(location) > 0;
+	}
+
+	/**
+	 * Opens a frozen index on top of a binary segment that is already in memory.
+	 *
+	 * @param segment the whole segment file
+	 * @throws IOException if the buffer is not a segment file
+	 *
+	 * @see #mapSegment(Path)
+	 */
+	private FrozenInvertedIndex(ByteBuffer segment) throws IOException {
+		super(false, false);
+
+		if (segment.limit() < HEADER || segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION) {
+			throw new IOException("Not a binary index segment.");
+		}
+
+		int numWords = segment.getInt(8);
+		int numLocations = segment.getInt(12);
+		int postings = segment.getInt(16);
+		int positionBytes = segment.getInt(20);
+		int offset = HEADER;
+
+		this.wordCounts = slice(segment, offset, numLocations * Long.BYTES).asLongBuffer();
+		offset += numLocations * Long.BYTES;
+		this.wordStarts = slice(segment, offset, (numWords + 1) * Integer.BYTES).asIntBuffer();
+		offset += (numWords + 1) * Integer.BYTES;
+		this.postingLocations = slice(segment, offset, postings * Integer.BYTES).asIntBuffer();
+		offset += postings * Integer.BYTES;
+		this.postingCounts = slice(segment, offset, postings * Integer.BYTES).asIntBuffer();
+		offset += postings * Integer.BYTES;
+		this.positionStarts = slice(segment, offset, (postings + 1) * Integer.BYTES).asIntBuffer();
+		offset += (postings + 1) * Integer.BYTES;
+		this.positions = slice(segment, offset, positionBytes);
+		offset += positionBytes;
+
+		// Strings are decoded once so lookups can binary search them directly
+		ByteBuffer strings = slice(segment, offset, segment.limit() - offset);
+		this.words = readStrings(strings, numWords);
+		this.locations = readStrings(strings, numLocations);
+	}
+
+	/**
+	 * Returns a view of part of a buffer.
+	 *
+	 * @param buffer the buffer to view
+	 * @param offset the offset of the first byte
+	 * @param length the number of bytes
+	 * @return a buffer of just those bytes
+	 * @throws IOException if the range is past the end of the buffer
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+			throw new IOException("The binary index segment is truncated.");
+		}
+		return buffer.slice(offset, length);
+	}
+
+	/**
+	 * Reads length prefixed UTF-8 strings, advancing the position of the buffer.
+	 *
+	 * @param buffer the buffer to read from
+	 * @param count the number of strings to read
+	 * @return the strings
+	 * @throws IOException if the buffer ends early
+	 */
+	private static String[] readStrings(ByteBuffer buffer, int count) throws IOException {
+		String[] strings = new String[count];
+
+		for (int i = 0; i < count; i++) {
+			int length = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : -1;
+			if (length < 0 || length > buffer.remaining()) {
+				throw new IOException("The binary index segment is truncated.");
+			}
+
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			strings[i] = new String(bytes, UTF_8);
+		}
+
+		return strings;
+	}
+
+	/**
+	 * Memory-maps a binary segment file written by {@link #writeSegment(Path)}. Only
+	 * the words and locations are read up front, the postings are paged in by the
+	 * operating system as searches touch them.
+	 *
+	 * @param segmentPath the segment file to open
+	 * @return the frozen index stored in the file
+	 * @throws IOException if the file cannot be read or is not a segment file
+	 */
+	public static FrozenInvertedIndex mapSegment(Path segmentPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+			MappedByteBuffer segment = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			return new FrozenInvertedIndex(segment);
+		}
+	}
+
+	/**
+	 * Writes the index as a binary segment file that can be opened again with
+	 * {@link #mapSegment(Path)}. The segment is written to a temporary file next
+	 * to the target and then moved over it, so an existing segment is never
+	 * truncated. That matters when the segment being replaced is the one this
+	 * index is mapped from, and it also means a failed save leaves the old file
+	 * intact.
+	 *
+	 * @param segmentPath the path to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void writeSegment(Path segmentPath) throws IOException {
+		Path target = segmentPath.toAbsolutePath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+		try {
+			writeSegment(temp, encodeStrings(words), encodeStrings(locations));
+
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Writes the segment layout into a new file.
+	 *
+	 * @param segmentPath the file to write to
+	 * @param wordBytes the encoded words
+	 * @param locationBytes the encoded locations
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeSegment(Path segmentPath, byte[][] wordBytes, byte[][] locationBytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).putInt(VERSION).putInt(words.length).putInt(locations.length)
+					.putInt(postingLocations.limit()).putInt(positions.limit()).flip();
+			writeFully(channel, header);
+
+			ByteBuffer counts = ByteBuffer.allocate(wordCounts.limit() * Long.BYTES);
+			counts.asLongBuffer().put(wordCounts.duplicate().rewind());
+			writeFully(channel, counts);
+
+			for (IntBuffer ints : List.of(wordStarts, postingLocations, postingCounts, positionStarts)) {
+				ByteBuffer bytes = ByteBuffer.allocate(ints.limit() * Integer.BYTES);
+				bytes.asIntBuffer().put(ints.duplicate().rewind());
+				writeFully(channel, bytes);
+			}
+
+			writeFully(channel, positions.duplicate().rewind());
+
+			for (byte[][] strings : List.of(wordBytes, locationBytes)) {
+				for (byte[] string : strings) {
+					ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES + string.length);
+					bytes.putInt(string.length).put(string).flip();
+					writeFully(channel, bytes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Encodes strings as UTF-8.
+	 *
+	 * @param strings the strings to encode
+	 * @return the bytes of each string
+	 */
+	private static byte[][] encodeStrings(String[] strings) {
+		byte[][] bytes = new byte[strings.length][];
+		for (int i = 0; i < strings.length; i++) {
+			bytes[i] = strings[i].getBytes(UTF_8);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes all the remaining bytes of a buffer to a channel.
+	 *
+	 * @param channel the channel to write to
+	 * @param buffer the bytes to write
+	 * @throws IOException if the write fails
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Adds every location of this snapshot into a mutable index, for example to
+	 * keep indexing on top of a segment loaded from disk.
+	 *
+	 * @param index the index to add to
+	 */
+	public void thaw(InvertedIndex index) {
+		FileIndexBuilder[] files = new FileIndexBuilder[locations.length];
+
+		for (int w = 0; w < words.length; w++) {
+			for (int posting = wordStarts.get(w); posting < wordStarts.get(w + 1); posting++) {
+				int id = postingLocations.get(posting);
+
+				if (files[id] == null) {
+					files[id] = new FileIndexBuilder(locations[id]);
+				}
+				files[id].add(words[w], decode(posting));
+			}
+		}
+
+		for (FileIndexBuilder file : files) {
+			if (file != null) {
+				index.addDistinct(file);
+			}
+		}
+	}
+
+	/**
+	 * Finds a word in the sorted word array.
+	 *
+	 * @param word The word to find.
+	 * @return The index of the word, or a negative value if it is not in the index.
+	 */
+	private int wordIndex(String word) {
+		return Arrays.binarySearch(words, word);
+	}
+
+	/**
+	 * Finds the posting of a word at a location.
+	 *
+	 * @param word The word to find.
+	 * @param location The file location.
+	 * @return The index of the posting, or -1 if the word is not at that location.
+	 */
+	private int postingIndex(String word, String location) {
+		int w = wordIndex(word);
+		int id = Arrays.binarySearch(locations, location);
+
+		if (w < 0 || id < 0) {
+			return -1;
+		}
+
+		// binary search the postings of the word, which are sorted by location id
+		int low = wordStarts.get(w);
+		int high = wordStarts.get(w + 1) - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int current = postingLocations.get(middle);
+
+			if (current < id) {
+				low = middle + 1;
+			} else if (current > id) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Decodes the positions of a posting.
+	 *
+	 * @param posting The index of the posting.
+	 * @return A new list of the positions.
+	 */
+	private PositionList decode(int posting) {
+		PositionList list = new PositionList();
+		int offset = positionStarts.get(posting);
+		int end = positionStarts.get(posting + 1);
+		int current = 0;
+
+		while (offset < end) {
+			int delta = 0;
+			int shift = 0;
+			byte next;
+
+			do {
+				next = positions.get(offset++);
+				delta |= (next & 0x7F) << shift;
+				shift += 7;
+			} while (next < 0);
+
+			current += delta;
+			list.append(current);
+		}
+
+		return list;
+	}
+
+	/**
+	 * Always fails, a frozen index cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void add(String word, String location, int position) {
+		throw new UnsupportedOperationException("A frozen index cannot be modified.");
+	}
+
+	/**
+	 * Always fails, a frozen index cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addAll(List<String> words, String location, int position) {
+		throw new UnsupportedOperationException("A frozen index cannot be modified.");
+	}
+
+	/**
+	 * Always fails, a frozen index cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addDistinct(InvertedIndex otherIndex) {
+		throw new UnsupportedOperationException("A frozen index cannot be modified.");
+	}
+
+	/**
+	 * Always fails, a frozen index cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addDistinct(FileIndexBuilder file) {
+		throw new UnsupportedOperationException("A frozen index cannot be modified.");
+	}
+
+	/**
+	 * Always fails, a frozen index cannot be modified.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void removeLocations(Collection<String> locations) {
+		throw new UnsupportedOperationException("A frozen index cannot be modified.");
+	}
+
+	/**
+	 * Splits the words of this index between several new mutable indexes. The
+	 * positions are decoded into a mutable copy first, since nothing can be
+	 * shared with the packed arrays.
+	 *
+	 * @param parts The number of parts.
+	 * @param partOf Picks the part of a word, from 0 up to one less than parts.
+	 * @return The parts, each with the words picked for it.
+	 */
+	@Override
+	public InvertedIndex[] split(int parts, ToIntFunction<String> partOf) {
+		InvertedIndex copy = new InvertedIndex();
+		thaw(copy);
+		return copy.split(parts, partOf);
+	}
+
+	/**
+	 * The index is already frozen.
+	 *
+	 * @return this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		return this;
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		return wordIndex(word) >= 0;
+	}
+
+	@Override
+	public boolean hasLocation(String word, String location) {
+		return postingIndex(word, location) >= 0;
+	}
+
+	@Override
+	public boolean hasPosition(String word, String location, int position) {
+		int posting = postingIndex(word, location);
+		return posting >= 0 && decode(posting).contains(position);
+	}
+
+	@Override
+	public Set<String> getWords() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<String> iterator() {
+				return Arrays.asList(words).iterator();
+			}
+
+			@Override
+			public int size() {
+				return words.length;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof String && hasWord((String) o);
+			}
+		};
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		TreeSet<String> paths = new TreeSet<>();
+		for (int id = 0; id < locations.length; id++) {
+			if (wordCounts.get(id) > 0) {
+				paths.add(locations[id]);
+			}
+		}
+		return Collections.unmodifiableSet(paths);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		int w = wordIndex(word);
+
+		if (w < 0) {
+			return Collections.emptySet();
+		}
+
+		TreeSet<String> paths = new TreeSet<>();
+		for (int posting = wordStarts.get(w); posting < wordStarts.get(w + 1); posting++) {
+			paths.add(locations[postingLocations.get(posting)]);
+		}
+		return Collections.unmodifiableSet(paths);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		int posting = postingIndex(word, location);
+		return posting < 0 ? Collections.emptySet() : Collections.unmodifiableSet(decode(posting));
+	}
+
+	@Override
+	public int numWords() {
+		return words.length;
+	}
+
+	@Override
+	public int numLocations(String word) {
+		int w = wordIndex(word);
+		return w < 0 ? 0 : wordStarts.get(w + 1) - wordStarts.get(w);
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		int posting = postingIndex(word, location);
+		return posting < 0 ? 0 : postingCounts.get(posting);
+	}
+
+	@Override
+	public long numWordsInLocation(String location) {
+		int id = Arrays.binarySearch(locations, location);
+		return id < 0 ? 0 : wordCounts.get(id);
+	}
+
+	@Override
+	public String getLocation(int id) {
+		return locations[id];
+	}
+
+	@Override
+	public String toString() {
+		return "Frozen index of " + words.length + " words in " + locations.length + " locations";
+	}
+
+	@Override
+	public void writeIndex(Path indexPath) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(indexPath, UTF_8)) {
+			writer.write("{\n");
+
+			for (int w = 0; w < words.length; w++) {
+				if (w > 0) {
+					writer.write(",\n");
+				}
+
+				// postings are already in path order
+				Map<String, PositionList> locationMap = new LinkedHashMap<>();
+				for (int posting = wordStarts.get(w); posting < wordStarts.get(w + 1); posting++) {
+					locationMap.put(locations[postingLocations.get(posting)], decode(posting));
+				}
+
+				JsonWriter.writeQuote(words[w], writer, 1);
+				writer.write(": ");
+				JsonWriter.writeObjectArrays(locationMap, writer, 1);
+			}
+
+			if (words.length > 0) {
+				writer.write("\n");
+			}
+			writer.write("}");
+		}
+	}
+
+	@Override
+	public void writeCounts(Path countsPath) throws IOException {
+		long[] counts = new long[locations.length];
+		wordCounts.get(0, counts);
+		JsonWriter.writeCountsToFile(Arrays.asList(locations), counts, countsPath);
+	}
+
+	/**
+	 * Adds the counts of a range of postings to the search results.
+	 *
+	 * @param scores The counts of every location matched so far
+	 * @param start The first posting to add
+	 * @param end The posting after the last one to add
+	 */
+	private void processPostings(ScoreAccumulator scores, int start, int end) {
+		for (int posting = start; posting < end; posting++) {
+			scores.add(postingLocations.get(posting), postingCounts.get(posting));
+		}
+	}
+
+	@Override
+	public List<FileResult> searchExact(Set<String> cleanedUniqueQueries, int limit) {
+		return rank(scoreExact(cleanedUniqueQueries).toResults(id -> locations[id], wordCounts::get), limit);
+	}
+
+	@Override
+	public List<FileResult> searchPartial(Set<String> cleanedUniqueQueries, int limit) {
+		return rank(scorePartial(cleanedUniqueQueries).toResults(id -> locations[id], wordCounts::get), limit);
+	}
+
+	@Override
+	public Map<String, Integer> searchCounts(Set<String> cleanedUniqueQueries, boolean isPartial) {
+		ScoreAccumulator scores = isPartial ? scorePartial(cleanedUniqueQueries) : scoreExact(cleanedUniqueQueries);
+		return scores.toCounts(id -> locations[id]);
+	}
+
+	/**
+	 * Adds up the exact matches of every location.
+	 *
+	 * @param cleanedUniqueQueries The cleaned and unique queries
+	 * @return The counts of every location matched
+	 */
+	private ScoreAccumulator scoreExact(Set<String> cleanedUniqueQueries) {
+		ScoreAccumulator scores = new ScoreAccumulator(locations.length);
+
+		for (String word : cleanedUniqueQueries) {
+			int w = wordIndex(word);
+
+			if (w >= 0) {
+				processPostings(scores, wordStarts.get(w), wordStarts.get(w + 1));
+			}
+		}
+
+		return scores;
+	}
+
+	/**
+	 * Adds up the matches of every location for words starting with the queries.
+	 *
+	 * @param cleanedUniqueQueries The cleaned and unique queries
+	 * @return The counts of every location matched
+	 */
+	private ScoreAccumulator scorePartial(Set<String> cleanedUniqueQueries) {
+		ScoreAccumulator scores = new ScoreAccumulator(locations.length);
+
+		for (String queryWord : cleanedUniqueQueries) {
+			int w = wordIndex(queryWord);
+			if (w < 0) {
+				w = -w - 1;
+			}
+
+			while (w < words.length && words[w].startsWith(queryWord)) {
+				processPostings(scores, wordStarts.get(w), wordStarts.get(w + 1));
+				w++;
+			}
+		}
+
+		return scores;
+	}
+}
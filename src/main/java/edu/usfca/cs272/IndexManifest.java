@@ -0,0 +1,268 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Remembers the size, modified time, and content hash of every file that was
+ * indexed, so a later run can tell which files are new, changed, or deleted and
+ * only index those again.
+ *
+ * A file whose size and modified time match is assumed to be unchanged without
+ * reading it. Otherwise its content hash decides, so files that were only
+ * touched are not indexed again.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class IndexManifest {
+	/** The recorded state of each indexed file, location : record */
+	private final TreeMap<String, FileRecord> files;
+
+	/**
+	 * Initializes an empty manifest, where every file is new.
+	 */
+	public IndexManifest() {
+		this.files = new TreeMap<>();
+	}
+
+	/**
+	 * Reads a manifest written by {@link #write(Path)}. If the file does not exist
+	 * yet, an empty manifest is returned.
+	 *
+	 * @param manifestPath the manifest file to read
+	 * @return the manifest
+	 * @throws IOException if the file cannot be read or is not a manifest
+	 */
+	public static IndexManifest read(Path manifestPath) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+
+		if (!Files.exists(manifestPath)) {
+			return manifest;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(manifestPath, UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// size, modified time, hash, location (which could contain tabs)
+				String[] parts = line.split("\t", 4);
+
+				if (parts.length != 4) {
+					throw new IOException("Invalid manifest line: " + line);
+				}
+
+				try {
+					manifest.files.put(parts[3], new FileRecord(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid manifest line: " + line, e);
+				}
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest so it can be read again on the next run.
+	 *
+	 * @param manifestPath the path to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(Path manifestPath) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(manifestPath, UTF_8)) {
+			for (var entry : files.entrySet()) {
+				FileRecord record = entry.getValue();
+				writer.write(record.size + "\t" + record.modified + "\t" + record.hash + "\t" + entry.getKey());
+				writer.write("\n");
+			}
+		}
+	}
+
+	/**
+	 * Returns the locations in the manifest.
+	 *
+	 * @return an unmodifiable set of the indexed locations
+	 */
+	public Set<String> getLocations() {
+		return Collections.unmodifiableSet(files.keySet());
+	}
+
+	/**
+	 * Compares the files that should be in the index now against the manifest, and
+	 * updates the manifest to match them.
+	 *
+	 * @param current every file that should be in the index
+	 * @return the files to index again and the locations to remove first
+	 * @throws IOException if a file cannot be read
+	 */
+	public Changes update(Collection<Path> current) throws IOException {
+		Changes changes = new Changes();
+		Set<String> seen = new HashSet<>();
+
+		for (Path path : current) {
+			String location = path.toString();
+			long size = Files.size(path);
+			long modified = Files.getLastModifiedTime(path).toMillis();
+			FileRecord record = files.get(location);
+			seen.add(location);
+
+			if (record != null && record.size == size && record.modified == modified) {
+				continue;
+			}
+
+			String hash = hash(path);
+
+			if (record != null && record.size == size && record.hash.equals(hash)) {
+				// only touched, the postings are still correct
+				files.put(location, new FileRecord(size, modified, hash));
+				continue;
+			}
+
+			if (record != null) {
+				changes.removed.add(location);
+			}
+
+			changes.changed.add(path);
+			files.put(location, new FileRecord(size, modified, hash));
+		}
+
+		var iterator = files.keySet().iterator();
+		while (iterator.hasNext()) {
+			String location = iterator.next();
+
+			if (!seen.contains(location)) {
+				changes.removed.add(location);
+				iterator.remove();
+			}
+		}
+
+		return changes;
+	}
+
+	/**
+	 * Computes the content hash of a file.
+	 *
+	 * @param path the file to hash
+	 * @return the SHA-256 hash of the file in hex
+	 * @throws IOException if the file cannot be read
+	 */
+	private static String hash(Path path) throws IOException {
+		try (InputStream input = Files.newInputStream(path)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[8192];
+			int read;
+
+			while ((read = input.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return files.toString();
+	}
+
+	/**
+	 * The recorded state of one indexed file.
+	 */
+	private static class FileRecord {
+		/** The size of the file in bytes */
+		private final long size;
+
+		/** The last modified time of the file in milliseconds */
+		private final long modified;
+
+		/** The content hash of the file */
+		private final String hash;
+
+		/**
+		 * Initializes a record.
+		 *
+		 * @param size the size of the file in bytes
+		 * @param modified the last modified time of the file in milliseconds
+		 * @param hash the content hash of the file
+		 */
+		public FileRecord(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		@Override
+		public String toString() {
+			return size + "/" + modified + "/" + hash;
+		}
+	}
+
+	/**
+	 * The differences found by {@link IndexManifest#update(Collection)}.
+	 */
+	public static class Changes {
+		/** The new or modified files that need to be indexed */
+		private final List<Path> changed;
+
+		/** The modified or deleted locations whose old postings need to be removed */
+		private final TreeSet<String> removed;
+
+		/**
+		 * Initializes empty changes.
+		 */
+		private Changes() {
+			this.changed = new ArrayList<>();
+			this.removed = new TreeSet<>();
+		}
+
+		/**
+		 * Returns the new or modified files that need to be indexed.
+		 *
+		 * @return an unmodifiable list of files
+		 */
+		public List<Path> getChanged() {
+			return Collections.unmodifiableList(changed);
+		}
+
+		/**
+		 * Returns the modified or deleted locations whose old postings need to be
+		 * removed before indexing.
+		 *
+		 * @return an unmodifiable set of locations
+		 */
+		public Set<String> getRemoved() {
+			return Collections.unmodifiableSet(removed);
+		}
+
+		@Override
+		public String toString() {
+			return "changed=" + changed + ", removed=" + removed;
+		}
+	}
+}
@@ -2,15 +2,24 @@ package edu.usfca.cs272;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.ToIntFunction;
 
 /**
  * Represents an inverted index where words map to their occurrences within files.
@@ -21,26 +30,66 @@ import java.util.TreeSet;
  * @version Fall 2023
  */
 public class InvertedIndex {
+	/** The search limit that keeps every result */
+	public static final int ALL_RESULTS = Integer.MAX_VALUE;
+
 	/**
 	 * The core data structure of the inverted index.
-	 * It maps words to file paths and the positions of the words within those files.
+	 * It maps words to location ids and the positions of the words within those files.
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> invertedIndex;
-	// Word : {Address : [1,2,3]}
+	private final TreeMap<String, TreeMap<Integer, PositionList>> invertedIndex;
+	// Word : {LocationId : [1,2,3]}
+
+	/**
+	 * The location dictionary. The index of a path in this list is its location id,
+	 * so ids are dense and assigned in the order locations are first seen.
+	 */
+	private final ArrayList<String> locations;
+
+	/** Reverse lookup of the location dictionary, path : location id */
+	private final HashMap<String, Integer> locationIds;
 
 	/**
 	 * Data structure for total words in a file
-	 * Map contains address : total words
+	 * Indexed by location id, a count of 0 means the location has no words
 	 */
-	private final Map<String, Long> wordCountMap;
+	private long[] wordCounts;
+
+	/** Whether position lists are delta and varint packed to save memory */
+	private final boolean packed;
 
 	/**
 	 * Initializes the inverted index data structure.
 	 */
 
 	public InvertedIndex() {
-		this.invertedIndex = new TreeMap<>();
-		this.wordCountMap = new TreeMap<>();
+		this(false);
+	}
+
+	/**
+	 * Initializes the inverted index data structure.
+	 * 
+	 * @param packed whether to delta and varint pack the position lists, which uses
+	 * less memory but makes position lookups slower
+	 */
+	public InvertedIndex(boolean packed) {
+		this(packed, true);
+	}
+
+	/**
+	 * Initializes the inverted index data structure, or leaves it out for
+	 * subclasses that keep their words somewhere else. Such a subclass has to
+	 * override every method that uses the words of this class.
+	 * 
+	 * @param packed whether to delta and varint pack the position lists
+	 * @param allocate whether to create the data structures of this class
+	 */
+	protected InvertedIndex(boolean packed, boolean allocate) {
+		this.packed = packed;
+		this.invertedIndex = allocate ? new TreeMap<>() : null;
+		this.locations = allocate ? new ArrayList<>() : null;
+		this.locationIds = allocate ? new HashMap<>() : null;
+		this.wordCounts = allocate ? new long[16] : null;
 	}
 
 	/** A toString method prints inverted index contents
@@ -60,7 +109,7 @@ public class InvertedIndex {
 	 * @throws IOException If an error occurs during file writing.
 	 */
 	public void writeIndex(Path indexPath) throws IOException {
-		JsonWriter.writeIndexToFile(invertedIndex,indexPath);
+		JsonWriter.writeIndexToFile(invertedIndex, locations, indexPath);
 	}
 
 	/**
@@ -70,7 +119,62 @@ public class InvertedIndex {
 	 * @throws IOException If writing fails.
 	 */
 	public void writeCounts(Path countsPath) throws IOException {
-		JsonWriter.writeObject(wordCountMap,countsPath);
+		JsonWriter.writeCountsToFile(locations, wordCounts, countsPath);
+	}
+
+	/**
+	 * Writes the index as a compact binary segment file that can be memory-mapped
+	 * back in with {@link FrozenInvertedIndex#mapSegment(Path)}.
+	 * 
+	 * @param segmentPath The path to write the binary segment.
+	 * @throws IOException If writing fails.
+	 */
+	public void writeSegment(Path segmentPath) throws IOException {
+		freeze().writeSegment(segmentPath);
+	}
+
+	/**
+	 * Looks up the id of a location in the location dictionary.
+	 * 
+	 * @param location The file location.
+	 * @return The location id, or -1 if the location is not in the dictionary.
+	 */
+	private int locationId(String location) {
+		Integer id = locationIds.get(location);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Looks up the id of a location, adding it to the location dictionary if it
+	 * has not been seen before.
+	 * 
+	 * @param location The file location.
+	 * @return The location id.
+	 */
+	private int addLocation(String location) {
+		Integer id = locationIds.get(location);
+
+		if (id == null) {
+			id = locations.size();
+			locations.add(location);
+			locationIds.put(location, id);
+
+			if (id == wordCounts.length) {
+				wordCounts = Arrays.copyOf(wordCounts, id * 2);
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Converts a location id back into its path.
+	 * 
+	 * @param id The location id.
+	 * @return The file location for that id.
+	 */
+	public String getLocation(int id) {
+		return locations.get(id);
 	}
 
 	/**
@@ -81,14 +185,16 @@ public class InvertedIndex {
 	 * @param position The position of the word.
 	 */
 	public void add(String word, String location, int position) {
+		int id = addLocation(location);
+
 		// Adds to invertedIndex
-		invertedIndex.putIfAbsent(word, new TreeMap<>());
-		invertedIndex.get(word).putIfAbsent(location, new TreeSet<>());
-		boolean modified = invertedIndex.get(word).get(location).add(position);
+		boolean modified = invertedIndex.computeIfAbsent(word, k -> new TreeMap<>())
+				.computeIfAbsent(id, k -> new PositionList(packed))
+				.add(position);
 
 		// Only updates the word count if something new was added
 		if (modified) {
-			wordCountMap.put(location, wordCountMap.getOrDefault(location, 0L) + 1);
+			wordCounts[id]++;
 		}
 	}
 
@@ -111,46 +217,310 @@ public class InvertedIndex {
 	 * Adds all the entries from another inverted index into the original inverted index
 	 * Same for wordCount
 	 * 
+	 * Both indexes keep their words sorted, so a big merge walks the two word lists
+	 * side by side instead of looking every word up, and words only in the other
+	 * index are moved over with their position lists rather than copied.
+	 * 
 	 * Warning:
 	 * The indexes should not overlap
 	 * 
 	 * @param otherIndex The other InvertedIndex to merge with this one.
 	 */
 	public void addDistinct(InvertedIndex otherIndex) {
-		for (var otherEntry : otherIndex.invertedIndex.entrySet()) {
-			String otherWord = otherEntry.getKey();
-			var otherMap = otherEntry.getValue();
-			var thisMap = this.invertedIndex.get(otherWord);
+		// Location ids are local to each index, so translate the other ids first
+		int[] remap = new int[otherIndex.locations.size()];
+		boolean identity = true;
+		boolean ascending = true;
 
-			if (thisMap == null) {
-				this.invertedIndex.put(otherWord, otherMap);
-			} else {
-				for (var nextEntry : otherMap.entrySet()) {
-					String location = nextEntry.getKey();
-					var positions = nextEntry.getValue();
-					var existingPositions = thisMap.get(location);
-
-					if (existingPositions == null) {
-						thisMap.put(location, positions);
-					} else {
-						existingPositions.addAll(positions);
-					}
+		for (int otherId = 0; otherId < remap.length; otherId++) {
+			remap[otherId] = addLocation(otherIndex.locations.get(otherId));
+			identity &= remap[otherId] == otherId;
+			ascending &= otherId == 0 || remap[otherId] > remap[otherId - 1];
+		}
+
+		var otherWords = otherIndex.invertedIndex;
+
+		if (isSparse(otherWords.size(), invertedIndex.size())) {
+			// A few words are cheaper to look up than to walk the whole index for
+			for (var otherEntry : otherWords.entrySet()) {
+				var thisMap = invertedIndex.get(otherEntry.getKey());
+
+				if (thisMap == null) {
+					invertedIndex.put(otherEntry.getKey(), moveLocations(otherEntry.getValue(), remap, identity));
+				} else {
+					mergeLocations(thisMap, otherEntry.getValue(), remap, ascending);
 				}
 			}
+		} else {
+			// Zip the two sorted word lists, merging shared words in place
+			var added = new ArrayList<Entry<String, TreeMap<Integer, PositionList>>>();
+			var thisIterator = invertedIndex.entrySet().iterator();
+			var thisEntry = thisIterator.hasNext() ? thisIterator.next() : null;
+
+			for (var otherEntry : otherWords.entrySet()) {
+				int compare = -1;
+				while (thisEntry != null && (compare = thisEntry.getKey().compareTo(otherEntry.getKey())) < 0) {
+					thisEntry = thisIterator.hasNext() ? thisIterator.next() : null;
+				}
+
+				if (thisEntry != null && compare == 0) {
+					mergeLocations(thisEntry.getValue(), otherEntry.getValue(), remap, ascending);
+				} else {
+					added.add(Map.entry(otherEntry.getKey(), moveLocations(otherEntry.getValue(), remap, identity)));
+				}
+			}
+
+			addSorted(added);
+		}
+
+		for (int otherId = 0; otherId < remap.length; otherId++) {
+			wordCounts[remap[otherId]] += otherIndex.wordCounts[otherId];
+		}
+	}
+
+	/**
+	 * Splits the words of this index between several new indexes, such as the
+	 * shards of a {@link ShardedInvertedIndex}. Every part keeps the location ids
+	 * of this index and shares its position lists instead of copying them, so this
+	 * index should not be changed afterwards.
+	 * 
+	 * @param parts The number of parts.
+	 * @param partOf Picks the part of a word, from 0 up to one less than parts.
+	 * @return The parts, each with the words picked for it.
+	 */
+	public InvertedIndex[] split(int parts, ToIntFunction<String> partOf) {
+		InvertedIndex[] split = new InvertedIndex[parts];
+		List<List<Entry<String, TreeMap<Integer, PositionList>>>> words = new ArrayList<>(parts);
+
+		for (int part = 0; part < parts; part++) {
+			split[part] = new InvertedIndex(packed);
+			split[part].locations.addAll(locations);
+			split[part].locationIds.putAll(locationIds);
+			split[part].wordCounts = new long[wordCounts.length];
+			words.add(new ArrayList<>());
+		}
+
+		for (var entry : invertedIndex.entrySet()) {
+			int part = partOf.applyAsInt(entry.getKey());
+			words.get(part).add(entry);
+
+			for (var locationEntry : entry.getValue().entrySet()) {
+				split[part].wordCounts[locationEntry.getKey()] += locationEntry.getValue().size();
+			}
+		}
+
+		// The words of each part are still sorted, so every tree is built in one pass
+		for (int part = 0; part < parts; part++) {
+			split[part].invertedIndex.putAll(new SortedRun<>(words.get(part)));
+		}
+
+		return split;
+	}
+
+	/**
+	 * Checks if adding some sorted keys to a tree one lookup at a time is cheaper
+	 * than walking the whole tree and rebuilding it, which is when the number of
+	 * lookups times the height of the tree is less than the size of the tree.
+	 * 
+	 * @param added The number of keys to add.
+	 * @param size The number of keys already in the tree.
+	 * @return true if the keys should be added one at a time
+	 */
+	private static boolean isSparse(int added, int size) {
+		return (long) added * (32 - Integer.numberOfLeadingZeros(size)) < size;
+	}
+
+	/**
+	 * Adds new words to the index, which are sorted and not in the index yet. A few
+	 * are put one at a time, but many are zipped with the words already here and
+	 * the tree is rebuilt from the result in one pass.
+	 * 
+	 * @param added The new words and their locations, in order.
+	 */
+	private void addSorted(List<Entry<String, TreeMap<Integer, PositionList>>> added) {
+		if (isSparse(added.size(), invertedIndex.size())) {
+			for (var entry : added) {
+				invertedIndex.put(entry.getKey(), entry.getValue());
+			}
+			return;
+		}
+
+		var merged = new ArrayList<Entry<String, TreeMap<Integer, PositionList>>>(invertedIndex.size() + added.size());
+		var addedIterator = added.iterator();
+		var addedEntry = addedIterator.hasNext() ? addedIterator.next() : null;
+
+		for (var thisEntry : invertedIndex.entrySet()) {
+			while (addedEntry != null && addedEntry.getKey().compareTo(thisEntry.getKey()) < 0) {
+				merged.add(addedEntry);
+				addedEntry = addedIterator.hasNext() ? addedIterator.next() : null;
+			}
+			merged.add(thisEntry);
+		}
+
+		while (addedEntry != null) {
+			merged.add(addedEntry);
+			addedEntry = addedIterator.hasNext() ? addedIterator.next() : null;
+		}
+
+		invertedIndex.clear();
+		invertedIndex.putAll(new SortedRun<>(merged));
+	}
+
+	/**
+	 * Moves the locations of a word that is only in the other index into this one.
+	 * The position lists are moved without copying, and so is the whole map when
+	 * the location ids of both indexes are the same.
+	 * 
+	 * @param otherMap The locations of the word in the other index.
+	 * @param remap The location ids in this index of the other location ids.
+	 * @param identity Whether every location id is the same in both indexes.
+	 * @return The locations of the word with location ids of this index.
+	 */
+	private TreeMap<Integer, PositionList> moveLocations(TreeMap<Integer, PositionList> otherMap, int[] remap, boolean identity) {
+		if (packed) {
+			otherMap.values().forEach(PositionList::pack);
+		}
+
+		if (identity) {
+			return otherMap;
+		}
+
+		var thisMap = new TreeMap<Integer, PositionList>();
+		for (var otherEntry : otherMap.entrySet()) {
+			thisMap.put(remap[otherEntry.getKey()], otherEntry.getValue());
+		}
+		return thisMap;
+	}
+
+	/**
+	 * Merges the locations of a word that is in both indexes into this one. When
+	 * the other locations all come after the ones already here, which is the usual
+	 * case for distinct indexes, they are appended without looking for overlaps.
+	 * 
+	 * @param thisMap The locations of the word in this index.
+	 * @param otherMap The locations of the word in the other index.
+	 * @param remap The location ids in this index of the other location ids.
+	 * @param ascending Whether the remapped location ids are still in order.
+	 */
+	private void mergeLocations(TreeMap<Integer, PositionList> thisMap, TreeMap<Integer, PositionList> otherMap, int[] remap, boolean ascending) {
+		if (packed) {
+			otherMap.values().forEach(PositionList::pack);
+		}
+
+		// Locations past the last one here cannot overlap, so they skip the lookup
+		boolean after = ascending && remap[otherMap.firstKey()] > thisMap.lastKey();
+
+		for (var otherEntry : otherMap.entrySet()) {
+			int id = remap[otherEntry.getKey()];
+			var positions = otherEntry.getValue();
+			var existingPositions = after ? null : thisMap.get(id);
+
+			if (existingPositions == null) {
+				thisMap.put(id, positions);
+			} else {
+				existingPositions.addAll(positions);
+			}
+		}
+	}
+
+	/**
+	 * Adds all the words of a single file at once. The position lists of the
+	 * builder are moved into the index instead of being copied.
+	 * 
+	 * Warning:
+	 * The file should not already be in the index
+	 * 
+	 * @param file The words and positions of one file.
+	 */
+	public void addDistinct(FileIndexBuilder file) {
+		if (file.isEmpty()) {
+			return;
+		}
+
+		int id = addLocation(file.getLocation());
+		long added = 0;
+
+		for (var entry : file.getWords().entrySet()) {
+			PositionList positions = entry.getValue();
+			var locationMap = invertedIndex.computeIfAbsent(entry.getKey(), k -> new TreeMap<>());
+			var existingPositions = locationMap.get(id);
+
+			if (packed) {
+				positions.pack();
+			}
+
+			if (existingPositions == null) {
+				locationMap.put(id, positions);
+				added += positions.size();
+			} else {
+				int before = existingPositions.size();
+				existingPositions.addAll(positions);
+				added += existingPositions.size() - before;
+			}
+		}
+
+		wordCounts[id] += added;
+	}
+
+	/**
+	 * Removes a location and all of its words from the index, for example when the
+	 * file was deleted or has changed and needs to be indexed again.
+	 * 
+	 * @param location The file location to remove.
+	 * @see #removeLocations(Collection)
+	 */
+	public void removeLocation(String location) {
+		removeLocations(List.of(location));
+	}
+
+	/**
+	 * Removes several locations and all of their words from the index. This takes
+	 * one pass over every word in the index, so removing locations together is
+	 * much faster than removing them one at a time.
+	 * 
+	 * @param locations The file locations to remove.
+	 */
+	public void removeLocations(Collection<String> locations) {
+		boolean[] removed = new boolean[this.locations.size()];
+		boolean any = false;
+
+		for (String location : locations) {
+			int id = locationId(location);
+
+			if (id >= 0 && wordCounts[id] > 0) {
+				removed[id] = true;
+				wordCounts[id] = 0;
+				any = true;
+			}
+		}
+
+		if (!any) {
+			return;
 		}
 
-		for (var entry : otherIndex.wordCountMap.entrySet()) {
-		    String location = entry.getKey();
-		    Long count = entry.getValue();
+		// The location keeps its id so the dictionary stays dense if it comes back
+		var iterator = invertedIndex.values().iterator();
+		while (iterator.hasNext()) {
+			var locationMap = iterator.next();
+			locationMap.keySet().removeIf(id -> removed[id]);
 
-		    if (this.wordCountMap.containsKey(location)) {
-		        this.wordCountMap.put(location, this.wordCountMap.get(location) + count);
-		    } else {
-		        this.wordCountMap.put(location, count);
-		    }
+			if (locationMap.isEmpty()) {
+				iterator.remove();
+			}
 		}
 	}
 
+	/**
+	 * Creates an immutable, read-optimized snapshot of the index for when no more
+	 * words will be added. The snapshot shares no data with this index.
+	 * 
+	 * @return A frozen copy of the index.
+	 * @see FrozenInvertedIndex
+	 */
+	public FrozenInvertedIndex freeze() {
+		return new FrozenInvertedIndex(invertedIndex, locations, wordCounts);
+	}
+
 	/**
 	 * Checks if the index contains a word.
 	 * 
@@ -169,7 +539,8 @@ public class InvertedIndex {
 	 * @return True if the location exists, else False.
 	 */
 	public boolean hasLocation(String word, String location) {
-		return hasWord(word) && invertedIndex.get(word).containsKey(location);
+		int id = locationId(location);
+		return id >= 0 && hasWord(word) && invertedIndex.get(word).containsKey(id);
 	}
 
 	/**
@@ -181,7 +552,7 @@ public class InvertedIndex {
 	 * @return True if the position exists, else False.
 	 */
 	public boolean hasPosition(String word, String location, int position) {
-		return hasLocation(word, location) && invertedIndex.get(word).get(location).contains(position);
+		return hasLocation(word, location) && invertedIndex.get(word).get(locationId(location)).contains(position);
 	}
 
 	/**
@@ -193,15 +564,34 @@ public class InvertedIndex {
 		return Collections.unmodifiableSet(invertedIndex.keySet());
 	}
 
+	/**
+	 * Retrieves every location with any words in the index.
+	 * 
+	 * @return An unmodifiable sorted set of the locations.
+	 */
+	public Set<String> getLocations() {
+		TreeSet<String> paths = new TreeSet<>();
+		for (int id = 0; id < locations.size(); id++) {
+			if (wordCounts[id] > 0) {
+				paths.add(locations.get(id));
+			}
+		}
+		return Collections.unmodifiableSet(paths);
+	}
+
 	/**
 	 * Retrieves all the locations and their positions for a given word.
 	 * 
 	 * @param word The word for which to retrieve locations and positions.
-	 * @return An unmodifiable map containing the locations and positions of the given word.
+	 * @return An unmodifiable sorted set containing the locations of the given word.
 	 */
 	public Set<String> getLocations(String word) {
 		if (hasWord(word)) {
-			return Collections.unmodifiableSet(invertedIndex.get(word).keySet());
+			TreeSet<String> paths = new TreeSet<>();
+			for (int id : invertedIndex.get(word).keySet()) {
+				paths.add(locations.get(id));
+			}
+			return Collections.unmodifiableSet(paths);
 		}
 		return Collections.emptySet();
 	}
@@ -215,7 +605,7 @@ public class InvertedIndex {
 	 */
 	public Set<Integer> getPositions(String word, String location) {
 		if (hasLocation(word, location)) {
-			return Collections.unmodifiableSet(invertedIndex.get(word).get(location));
+			return Collections.unmodifiableSet(invertedIndex.get(word).get(locationId(location)));
 		}
 
 		return Collections.emptySet();
@@ -248,7 +638,7 @@ public class InvertedIndex {
 	 * @return The number of positions for the word at the location. Returns 0 if the word or location does not exist.
 	 */
 	public int numPositions(String word, String location) {
-		return hasLocation(word, location) ? invertedIndex.get(word).get(location).size() : 0;
+		return hasLocation(word, location) ? invertedIndex.get(word).get(locationId(location)).size() : 0;
 	}
 
 	/**
@@ -258,31 +648,48 @@ public class InvertedIndex {
 	 * @return The total number of words at the location. Returns 0 if the location does not exist.
 	 */
 	public long numWordsInLocation(String location) {
-		return wordCountMap.getOrDefault(location, 0L);
+		int id = locationId(location);
+		return id >= 0 ? wordCounts[id] : 0;
 	}
 
 	/** =============================Project 2 Functionality============================= */
 
-	/**A Private helper method for search. 
+	/**A Private helper method for search, adds the matches of one word. 
 	 * 
-	 * @param lookupMap The lookup map to keep track of fr objects that has already been made
-	 * @param resultList populate the List of FileResult objects that will be returned at the end of the process
+	 * @param scores The counts of every location matched so far
 	 * @param set the Entry set that is being used in both exact/partial search
 	 */
-	private void processFileResult(HashMap<String, FileResult> lookupMap, List<FileResult> resultList, Set<Entry<String, TreeSet<Integer>>> set) {
+	private static void processFileResult(ScoreAccumulator scores, Set<Entry<Integer, PositionList>> set) {
 		for (var entry : set) {
-			String location = entry.getKey();
-			int count = entry.getValue().size();
-			FileResult fileResults = lookupMap.get(location);
-			if (fileResults == null) {
-				fileResults = new FileResult(location);
-				lookupMap.put(location, fileResults);
-				resultList.add(fileResults);
-			}
-			fileResults.incrementCount(count);
+			scores.add(entry.getKey(), entry.getValue().size());
 		}
 	}
 
+	/**
+	 * Creates the results of a search once every word has been added.
+	 * 
+	 * @param scores The counts of every location matched
+	 * @param limit the most results to return
+	 * @return the best results in sorted order
+	 */
+	private List<FileResult> processResults(ScoreAccumulator scores, int limit) {
+		return rank(scores.toResults(locations::get, id -> wordCounts[id]), limit);
+	}
+
+	/**
+	 * Counts the matches of every location for a search, without scoring or
+	 * sorting them, so they can be added to the counts of other indexes that
+	 * hold different words for the same locations.
+	 * 
+	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @param isPartial determines partial or exact search
+	 * @return the number of matches of each location, in no particular order
+	 */
+	public Map<String, Integer> searchCounts(Set<String> cleanedUniqueQueries, boolean isPartial) {
+		ScoreAccumulator scores = isPartial ? scorePartial(cleanedUniqueQueries) : scoreExact(cleanedUniqueQueries);
+		return scores.toCounts(locations::get);
+	}
+
 
 	/**Convenience method... 
 	 * Basic search that determines exact or partial search
@@ -292,8 +699,56 @@ public class InvertedIndex {
 	 * @return a List of file result meta data for the query being searched
 	 */
 	public List<InvertedIndex.FileResult> search(Set<String> cleanedUniqueQueries, boolean isPartial) {
-		return isPartial ? searchPartial(cleanedUniqueQueries)
-				: searchExact(cleanedUniqueQueries);
+		return search(cleanedUniqueQueries, isPartial, ALL_RESULTS);
+	}
+
+	/**
+	 * Searches for exact or partial matches, but only keeps the best results.
+	 * 
+	 * @param cleanedUniqueQueries is the singular query being processed
+	 * @param isPartial determines partial or exact search
+	 * @param limit the most results to return, or {@link #ALL_RESULTS}
+	 * @return a List of at most limit file results for the query being searched
+	 */
+	public List<InvertedIndex.FileResult> search(Set<String> cleanedUniqueQueries, boolean isPartial, int limit) {
+		return isPartial ? searchPartial(cleanedUniqueQueries, limit)
+				: searchExact(cleanedUniqueQueries, limit);
+	}
+
+	/**
+	 * Sorts search results, keeping only the best ones. When only some results are
+	 * kept, a heap of the best results seen so far is used instead of sorting all
+	 * of them, so it takes O(n log limit) time instead of O(n log n).
+	 * 
+	 * @param resultList the results in any order, which may be reordered
+	 * @param limit the most results to return, or {@link #ALL_RESULTS}
+	 * @return the best results in sorted order
+	 */
+	public static List<FileResult> rank(List<FileResult> resultList, int limit) {
+		if (limit >= resultList.size()) {
+			Collections.sort(resultList);
+			return resultList;
+		}
+
+		if (limit <= 0) {
+			return new ArrayList<>();
+		}
+
+		// The worst of the best results so far is on top
+		PriorityQueue<FileResult> heap = new PriorityQueue<>(limit + 1, Collections.reverseOrder());
+
+		for (FileResult result : resultList) {
+			if (heap.size() < limit) {
+				heap.add(result);
+			} else if (result.compareTo(heap.peek()) < 0) {
+				heap.poll();
+				heap.add(result);
+			}
+		}
+
+		List<FileResult> top = new ArrayList<>(heap);
+		Collections.sort(top);
+		return top;
 	}
 
 	/**
@@ -304,19 +759,39 @@ public class InvertedIndex {
 	 * @return a sorted list of FileResult objects
 	 */
 	public List<FileResult> searchExact(Set<String> cleanedUniqueQueries) {
-		HashMap<String, FileResult> lookupMap = new HashMap<>();
-		List<FileResult> resultList = new ArrayList<>();
+		return searchExact(cleanedUniqueQueries, ALL_RESULTS);
+	}
+
+	/**
+	 * Performs an exact search for cleaned and unique queries and returns the best
+	 * FileResult objects in sorted order.
+	 *
+	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @param limit the most results to return, or {@link #ALL_RESULTS}
+	 * @return a sorted list of at most limit FileResult objects
+	 */
+	public List<FileResult> searchExact(Set<String> cleanedUniqueQueries, int limit) {
+		return processResults(scoreExact(cleanedUniqueQueries), limit);
+	}
+
+	/**
+	 * Adds up the exact matches of every location.
+	 *
+	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @return the counts of every location matched
+	 */
+	private ScoreAccumulator scoreExact(Set<String> cleanedUniqueQueries) {
+		ScoreAccumulator scores = new ScoreAccumulator(locations.size());
 
 		for (String word : cleanedUniqueQueries) {
 			var innerMap = invertedIndex.get(word);
 
 			if (innerMap != null) {
-				processFileResult(lookupMap, resultList, innerMap.entrySet());
+				processFileResult(scores, innerMap.entrySet());
 			}
 		}
 
-		Collections.sort(resultList);
-		return resultList;
+		return scores;
 	}
 
 	/**
@@ -327,8 +802,29 @@ public class InvertedIndex {
 	 * @return a sorted list of FileResult objects
 	 */
 	public List<FileResult> searchPartial(Set<String> cleanedUniqueQueries) {
-		HashMap<String, FileResult> lookupMap = new HashMap<>();
-		List<FileResult> resultList = new ArrayList<>();
+		return searchPartial(cleanedUniqueQueries, ALL_RESULTS);
+	}
+
+	/**
+	 * Performs a partial search for cleaned and unique queries and returns the best
+	 * FileResult objects in sorted order.
+	 *
+	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @param limit the most results to return, or {@link #ALL_RESULTS}
+	 * @return a sorted list of at most limit FileResult objects
+	 */
+	public List<FileResult> searchPartial(Set<String> cleanedUniqueQueries, int limit) {
+		return processResults(scorePartial(cleanedUniqueQueries), limit);
+	}
+
+	/**
+	 * Adds up the matches of every location for words starting with the queries.
+	 *
+	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @return the counts of every location matched
+	 */
+	private ScoreAccumulator scorePartial(Set<String> cleanedUniqueQueries) {
+		ScoreAccumulator scores = new ScoreAccumulator(locations.size());
 
 		for (String queryWord : cleanedUniqueQueries) {
 			for (var entry : invertedIndex.tailMap(queryWord).entrySet()) {
@@ -338,12 +834,11 @@ public class InvertedIndex {
 					break;
 				}
 
-				processFileResult(lookupMap, resultList, entry.getValue().entrySet());
+				processFileResult(scores, entry.getValue().entrySet());
 			}
 		}
 
-		Collections.sort(resultList);
-		return resultList;
+		return scores;
 	}
 
 
@@ -356,11 +851,17 @@ public class InvertedIndex {
 	 * @author CS 272 Software Development (University of San Francisco)
 	 * @version Fall 2023
 	 */
-	public class FileResult implements Comparable<FileResult> {
+	public static class FileResult implements Comparable<FileResult> {
+
+		/** A private final location id from the location dictionary */
+		private final int id;
 
-		/** A private final string value for location*/
+		/** A private final string value for location, shared with the location dictionary */
 		private final String location;
 
+		/** A private final total words in the location of the file */
+		private final long totalWords;
+
 		/** A private final integer for the amount of times a word has been found in a location */
 		private int count = 0;
 
@@ -368,12 +869,29 @@ public class InvertedIndex {
 		private double score = 0.0;
 
 		/**A constructor for the FileResult inner class
-		 * It takes in a location of a word...
+		 * It takes in the location id of a word...
 		 * 
-		 * @param location of a given word that is being searched...
+		 * @param id of the location of a given word that is being searched...
+		 * @param location the path the id refers to
+		 * @param totalWords the total words in that location, used for the score
 		 */
-		public FileResult(String location) {
+		public FileResult(int id, String location, long totalWords) {
+			this.id = id;
 			this.location = location;
+			this.totalWords = totalWords;
+		}
+
+		/**A constructor for when the count is already known, so the score is only computed once
+		 * 
+		 * @param id of the location of a given word that is being searched...
+		 * @param location the path the id refers to
+		 * @param totalWords the total words in that location, used for the score
+		 * @param count the total times the query words appear in that location
+		 */
+		public FileResult(int id, String location, long totalWords, int count) {
+			this(id, location, totalWords);
+			this.count = count;
+			updateScore();
 		}
 
 		/**A get count method...
@@ -401,11 +919,20 @@ public class InvertedIndex {
 			return this.location;
 		}
 
+		/**
+		 * Returns the location id.
+		 *
+		 * @return the id of the where location.
+		 */
+		public int getLocationId() {
+			return this.id;
+		}
+
 		/**Increment count is used to add onto existing count to calculate score for words...
 		 * 
 		 * @param value Is the total count of a word in a file
 		 */
-		private void incrementCount(int value) {
+		public void incrementCount(int value) {
 			this.count += value;
 			updateScore();
 		}
@@ -414,7 +941,6 @@ public class InvertedIndex {
 		 * 
 		 */
 		private void updateScore() {
-			long totalWords = wordCountMap.getOrDefault(location, 0L);
 			if (totalWords != 0) {
 				this.score = (double) count / totalWords;
 			}
@@ -449,7 +975,13 @@ public class InvertedIndex {
 				return countCompare;
 			}
 
-			return this.location.compareToIgnoreCase(other.location);
+			int locationCompare = this.location.compareToIgnoreCase(other.location);
+			if (locationCompare != 0) {
+				return locationCompare;
+			}
+
+			// paths that only differ in case still need an order that does not depend on the location ids
+			return this.location.compareTo(other.location);
 		}
 
 		/**To string method to test if variables have the proper values
@@ -460,4 +992,77 @@ public class InvertedIndex {
 			return "\nCount: " + count + ",\nScore: " + score + "\nLocation: " + location + "\n";
 		}
 	}
+
+	/**
+	 * A read-only sorted map over a list of entries that are already in order and
+	 * have no duplicate keys. A {@link TreeMap} built from a sorted map builds its
+	 * tree in one pass instead of one lookup per key, so this lets a merged list be
+	 * turned back into a tree in linear time. Only iterating is supported.
+	 * 
+	 * @param <K> The type of the keys, in their natural order.
+	 * @param <V> The type of the values.
+	 */
+	private static class SortedRun<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+		/** The entries in key order */
+		private final List<Entry<K, V>> entries;
+
+		/**
+		 * Wraps a sorted list of entries.
+		 * 
+		 * @param entries The entries in key order, which are not copied.
+		 */
+		public SortedRun(List<Entry<K, V>> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public Set<Entry<K, V>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public Iterator<Entry<K, V>> iterator() {
+					return entries.iterator();
+				}
+
+				@Override
+				public int size() {
+					return entries.size();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+
+		@Override
+		public Comparator<? super K> comparator() {
+			return null;
+		}
+
+		@Override
+		public K firstKey() {
+			return entries.get(0).getKey();
+		}
+
+		@Override
+		public K lastKey() {
+			return entries.get(entries.size() - 1).getKey();
+		}
+
+		@Override
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedMap<K, V> headMap(K toKey) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedMap<K, V> tailMap(K fromKey) {
+			throw new UnsupportedOperationException();
+		}
+	}
 }
\ No newline at end of file
@@ -3,11 +3,9 @@ package edu.usfca.cs272;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.io.BufferedReader;
 import java.io.IOException;
-
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Provides utility functions for processing files, directories, and generating data outputs.
@@ -21,26 +19,62 @@ public class InvertedIndexProcessor {
 
 	/**
 	 * Processes a file, stems its words, and updates the inverted index data structure.
+	 * The whole file is collected first and then merged into the index at once.
 	 * 
 	 * @param filePath The path to the file to process.
 	 * @param index The InvertedIndex instance used for updating word occurrences.
 	 * @throws IOException If an error occurs while reading the file.
 	 */
 	public static void processFile(Path filePath, InvertedIndex index) throws IOException {
-		try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-			String line;
-			int position = 0;
-			String filePathStr = filePath.toString();
-			SnowballStemmer stemmer = new SnowballStemmer(ENGLISH);
-			while ((line = reader.readLine()) != null) {
-				String[] words = FileStemmer.parse(line);
-				for (String word : words) {
-					String stemmedWord = stemmer.stem(word).toString();
-					position++;
-					index.add(stemmedWord, filePathStr, position);
-				}
-			}
-		}
+		index.addDistinct(buildFile(filePath));
+	}
+
+	/**
+	 * Reads and stems the words of a file into a builder without touching any index,
+	 * using the default analyzer.
+	 * 
+	 * @param filePath The path to the file to process.
+	 * @return The words and positions of the file.
+	 * @throws IOException If an error occurs while reading the file.
+	 * @see Analyzer#DEFAULT
+	 */
+	public static FileIndexBuilder buildFile(Path filePath) throws IOException {
+		return buildFile(filePath, Analyzer.DEFAULT);
+	}
+
+	/**
+	 * Reads and stems the words of a file into a builder without touching any index.
+	 * The analyzer reuses the tokenizer, stemmer and read buffers of the calling
+	 * thread, so nothing is set up per file and no string is made per line.
+	 * 
+	 * @param filePath The path to the file to process.
+	 * @param analyzer Turns each line into stems.
+	 * @return The words and positions of the file.
+	 * @throws IOException If an error occurs while reading the file.
+	 */
+	public static FileIndexBuilder buildFile(Path filePath, Analyzer analyzer) throws IOException {
+		FileIndexBuilder builder = new FileIndexBuilder(filePath.toString());
+		analyzer.forEachStem(filePath, builder::add);
+		return builder;
+	}
+
+	/**
+	 * Reads and stems the words of one part of a file into a builder. Positions start
+	 * over from 1 in every part, see {@link FileIndexBuilder#append(FileIndexBuilder)}
+	 * for joining the parts back together.
+	 * 
+	 * @param filePath The path to the file to process.
+	 * @param start The offset of the first byte of the part, at the start of a line.
+	 * @param end The offset just past the last byte of the part.
+	 * @param analyzer Turns each line into stems.
+	 * @return The words and positions of the part.
+	 * @throws IOException If an error occurs while reading the file.
+	 * @see TextFileReader#splitLines(Path, int)
+	 */
+	public static FileIndexBuilder buildPart(Path filePath, long start, long end, Analyzer analyzer) throws IOException {
+		FileIndexBuilder builder = new FileIndexBuilder(filePath.toString());
+		analyzer.forEachStem(filePath, start, end, builder::add);
+		return builder;
 	}
 
 	/**
@@ -89,4 +123,64 @@ public class InvertedIndexProcessor {
 			processDirectory(inputPath, index);
 		}
 	}
+
+	/**
+	 * Lists the text files that processText would index for a given input path.
+	 * 
+	 * @param inputPath The path to either a single file or a directory.
+	 * @return The text files in the order they would be processed.
+	 * @throws IOException If an error occurs while listing a directory.
+	 */
+	public static List<Path> listTextFiles(Path inputPath) throws IOException {
+		List<Path> files = new ArrayList<>();
+
+		if (Files.isRegularFile(inputPath)) {
+			files.add(inputPath);
+		} else if (Files.isDirectory(inputPath)) {
+			listTextFiles(inputPath, files);
+		}
+
+		return files;
+	}
+
+	/**
+	 * Recursively adds the text files of a directory to a list.
+	 * 
+	 * @param dirPath The directory to list.
+	 * @param files The list to add the files to.
+	 * @throws IOException If an error occurs while listing the directory.
+	 */
+	private static void listTextFiles(Path dirPath, List<Path> files) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
+			for (Path entry : stream) {
+				if (Files.isDirectory(entry)) {
+					listTextFiles(entry, files);
+				} else if (Files.isRegularFile(entry) && isTextFile(entry)) {
+					files.add(entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Brings an index that was built from the same input path up to date. Only new
+	 * or modified files are processed again, and the old words of modified or
+	 * deleted files are removed first. The manifest is updated to match.
+	 * 
+	 * @param inputPath The path to either a single file or a directory to process.
+	 * @param index The index built on an earlier run, matching the manifest.
+	 * @param manifest The manifest of the files in the index.
+	 * @return The changes that were made to the index.
+	 * @throws IOException If an error occurs during file or directory processing.
+	 */
+	public static IndexManifest.Changes processIncremental(Path inputPath, InvertedIndex index, IndexManifest manifest) throws IOException {
+		IndexManifest.Changes changes = manifest.update(listTextFiles(inputPath));
+		index.removeLocations(changes.getRemoved());
+
+		for (Path file : changes.getChanged()) {
+			processFile(file, index);
+		}
+
+		return changes;
+	}
 }
@@ -9,7 +9,9 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 
@@ -440,7 +442,163 @@ public class JsonWriter {
 		writer.write("}");
 	}
 
+	/**Sorts the location ids by their path, the same order a map keyed by path would use
+	 * 
+	 * @param locations the location dictionary, where the index of a path is its id
+	 * @return the rank of every location id in path order
+	 */
+	private static int[] rankLocations(List<String> locations) {
+		Integer[] order = new Integer[locations.size()];
+		for (int id = 0; id < order.length; id++) {
+			order[id] = id;
+		}
+		Arrays.sort(order, (a, b) -> locations.get(a).compareTo(locations.get(b)));
+
+		int[] rank = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			rank[order[i]] = i;
+		}
+		return rank;
+	}
+
+	/**Writes the index as a pretty json format, converting location ids back into paths
+	 * 
+	 * @param index the index data structure keyed by location id
+	 * @param locations the location dictionary, where the index of a path is its id
+	 * @param path The output that will be writing to
+	 * @throws IOException throws an error if problems occur
+	 */
+	public static void writeIndexToFile(Map<String, ? extends Map<Integer, ? extends Collection<? extends Number>>> index, List<String> locations, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			writeIndexToFile(index, locations, writer, 0);
+		}
+	}
+
+	/**Writes the index keyed by location id into a pretty json format. Locations are
+	 * written as paths and in path order, so the output matches an index keyed by path.
+	 * 
+	 * @param index is the data structure that is being written in jsonformat
+	 * @param locations the location dictionary, where the index of a path is its id
+	 * @param writer writer to write the data into a file
+	 * @param indent indent count for spacing
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeIndexToFile(Map<String, ? extends Map<Integer, ? extends Collection<? extends Number>>> index, List<String> locations, Writer writer, int indent) throws IOException {
+		int[] rank = rankLocations(locations);
+		writer.write("{\n");
+
+		var iterator = index.entrySet().iterator();
+		if (iterator.hasNext()) {
+			// Handle the first entry
+			var wordEntry = iterator.next();
+			writeQuote(wordEntry.getKey(), writer, indent + 1);
+			writer.write(": ");
+			writeLocationArrays(wordEntry.getValue(), locations, rank, writer, indent + 1);
+
+			// Handle remaining entries
+			while (iterator.hasNext()) {
+				writer.write(",\n");
+				wordEntry = iterator.next();
+
+				writeQuote(wordEntry.getKey(), writer, indent + 1);
+				writer.write(": ");
+				writeLocationArrays(wordEntry.getValue(), locations, rank, writer, indent + 1);
+			}
+
+			writer.write("\n");
+		}
+		writer.write("}");
+	}
+
+	/**A helper method that writes the locations of one word as a pretty json object with nested arrays
+	 * 
+	 * @param elements the positions of one word keyed by location id
+	 * @param locations the location dictionary, where the index of a path is its id
+	 * @param rank the rank of every location id in path order
+	 * @param writer the writer to use
+	 * @param indent the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void writeLocationArrays(Map<Integer, ? extends Collection<? extends Number>> elements, List<String> locations, int[] rank, Writer writer, int indent) throws IOException {
+		Integer[] ids = elements.keySet().toArray(new Integer[0]);
+		Arrays.sort(ids, (a, b) -> Integer.compare(rank[a], rank[b]));
+
+		writer.write("{\n");
+
+		for (int i = 0; i < ids.length; i++) {
+			if (i > 0) {
+				writer.write(",\n");
+			}
+
+			writeQuote(locations.get(ids[i]), writer, indent + 1);
+			writer.write(": ");
+			writeArray(elements.get(ids[i]), writer, indent + 1);
+		}
+
+		if (ids.length > 0) {
+			writer.write("\n");
+		}
+
+		writeIndent(writer, indent);
+		writer.write("}");
+	}
+
+	/**Writes the word counts of every location as a pretty json object in path order.
+	 * Locations with a count of zero are skipped.
+	 * 
+	 * @param locations the location dictionary, where the index of a path is its id
+	 * @param counts the word counts indexed by location id
+	 * @param path The output that will be writing to
+	 * @throws IOException throws an error if problems occur
+	 */
+	public static void writeCountsToFile(List<String> locations, long[] counts, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			writeCountsToFile(locations, counts, writer, 0);
+		}
+	}
 
+	/**Writes the word counts of every location as a pretty json object in path order.
+	 * Locations with a count of zero are skipped.
+	 * 
+	 * @param locations the location dictionary, where the index of a path is its id
+	 * @param counts the word counts indexed by location id
+	 * @param writer the writer to use
+	 * @param indent the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeCountsToFile(List<String> locations, long[] counts, Writer writer, int indent) throws IOException {
+		int[] rank = rankLocations(locations);
+		int[] order = new int[rank.length];
+		for (int id = 0; id < rank.length; id++) {
+			order[rank[id]] = id;
+		}
+
+		writer.write("{\n");
+		boolean first = true;
+
+		for (int id : order) {
+			if (counts[id] == 0) {
+				continue;
+			}
+
+			if (!first) {
+				writer.write(",\n");
+			}
+			first = false;
+
+			writeIndent(writer, indent + 1);
+			writeQuote(locations.get(id), writer, 0);
+			writer.write(": ");
+			writer.write(Long.toString(counts[id]));
+		}
+
+		if (!first) {
+			writer.write("\n");
+		}
+
+		writeIndent(writer, indent);
+		writer.write("}");
+	}
 
 	/**Writes the resultsMap data structure into a json format
 	 * 
@@ -5,18 +5,64 @@ import java.io.UncheckedIOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 
 
 /**The multi threaded variant of the inverted index processor
- * It makes the processFile method as a task as a whole
+ * It makes the processFile method as a task as a whole, except for very large
+ * files, which are split into parts at line boundaries and indexed in parallel
  * 
  */
 public class MultiThreadInvertedIndexProcessor {
+	/** Logger to use for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** Logger for the reports on how a run went, shown with the -stats flag */
+	private static final Logger stats = LogManager.getLogger("stats");
+
+	/** The smallest part a large file is split into, so only files of at least twice this are split */
+	public static final long PART_SIZE = 1L << 23;
+
+	/** Used for the task cap to mean there is no cap */
+	public static final int UNBOUNDED = 0;
+
+	/** Files smaller than this are indexed in batches when scheduling largest first */
+	public static final long BATCH_SIZE = 1L << 16;
+
+	/** The most bytes of small files in one batch */
+	public static final long BATCH_BYTES = 1L << 20;
+
+	/**
+	 * Queues the indexing of a file. A file big enough for at least two parts is
+	 * split into one part per worker, at most, and the parts are indexed at the
+	 * same time.
+	 * 
+	 * @param path The file to index.
+	 * @param index The index to add the file to.
+	 * @param workQueue the Workqueue that will be used to execute said tasks
+	 * @throws IOException If an error occurs while looking at the file.
+	 */
+	public static void execute(Path path, ThreadSafeInvertedIndex index, WorkQueue workQueue) throws IOException {
+		new Traversal(index, workQueue, UNBOUNDED, false).addFile(path);
+	}
 
 	/**
 	 * Processes a directory by iterating through its files and updating the inverted index.
-	 * Only processes files with .txt or .text extensions.
+	 * Only processes files with .txt or .text extensions. The directory itself is
+	 * listed here, and every subdirectory is listed by its own task, so files are
+	 * queued as soon as they are found anywhere in the tree.
 	 * 
 	 * @param dirPath The path to the directory to process
 	 * @param index The InvertedIndex instance used for updating word occurrences.
@@ -24,16 +70,7 @@ public class MultiThreadInvertedIndexProcessor {
 	 * @throws IOException If an error occurs while reading files within the directory.
 	 */
 	public static void processDirectory(Path dirPath, ThreadSafeInvertedIndex index, WorkQueue workQueue) throws IOException {
-		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
-			// Create the work queue
-			for (Path entry : stream) {
-				if (Files.isDirectory(entry)) {
-					processDirectory(entry, index, workQueue);
-				} else if (Files.isRegularFile(entry) && InvertedIndexProcessor.isTextFile(entry)) {
-					workQueue.execute(new Task(entry, index));
-				}
-			}
-		}
+		new Traversal(index, workQueue, UNBOUNDED, false).listDirectory(dirPath);
 	}
 
 	/**
@@ -46,12 +83,394 @@ public class MultiThreadInvertedIndexProcessor {
 	 * @throws IOException If an error occurs during file or directory processing.
 	 */
 	public static void processText(Path inputPath, ThreadSafeInvertedIndex index, WorkQueue workQueue) throws IOException {
+		processText(inputPath, index, workQueue, UNBOUNDED);
+	}
+
+	/**
+	 * Processes a given input path with at most a number of directory and file tasks
+	 * waiting or running at a time. Once the cap is reached, whichever thread finds
+	 * more work does it itself instead of queueing it, so the queue never grows past
+	 * the cap and no worker ever blocks on another.
+	 * 
+	 * @param inputPath The path to either a single file or a directory to process.
+	 * @param index The InvertedIndex instance to use for processing.
+	 * @param workQueue the Workqueue that will be used to execute said tasks
+	 * @param maxTasks the most tasks outstanding at once, or {@link #UNBOUNDED}
+	 * @throws IOException If an error occurs during file or directory processing.
+	 */
+	public static void processText(Path inputPath, ThreadSafeInvertedIndex index, WorkQueue workQueue, int maxTasks) throws IOException {
+		processText(inputPath, index, workQueue, maxTasks, false);
+	}
+
+	/**
+	 * Processes a given input path, optionally with every worker adding its files
+	 * to an index of its own. Those indexes are only ever touched by their own
+	 * thread, so no locks are taken while indexing, and once every file is done
+	 * they are merged in pairs on the work queue, halving their number each round,
+	 * and the last one is added to the shared index at once.
+	 * 
+	 * @param inputPath The path to either a single file or a directory to process.
+	 * @param index The InvertedIndex instance to use for processing.
+	 * @param workQueue the Workqueue that will be used to execute said tasks
+	 * @param maxTasks the most tasks outstanding at once, or {@link #UNBOUNDED}
+	 * @param perWorker whether each worker should build its own index
+	 * @throws IOException If an error occurs during file or directory processing.
+	 */
+	public static void processText(Path inputPath, ThreadSafeInvertedIndex index, WorkQueue workQueue, int maxTasks, boolean perWorker) throws IOException {
+		Traversal traversal = new Traversal(index, workQueue, maxTasks, perWorker);
+
 		if (Files.isRegularFile(inputPath)) {
-			workQueue.execute(new Task(inputPath, index));
+			traversal.addFile(inputPath);
 		} else if (Files.isDirectory(inputPath)) {
-			processDirectory(inputPath, index, workQueue);
+			traversal.listDirectory(inputPath);
 		}
 		workQueue.finish();
+		traversal.reduce();
+		traversal.balance.log();
+	}
+
+	/**
+	 * Processes a given input path largest file first. Every file is listed and
+	 * measured before anything is queued, and then the biggest files go first so a
+	 * huge file found last cannot hold up the end of the run (longest processing
+	 * time first scheduling). Files smaller than {@link #BATCH_SIZE} come last, in
+	 * batches of up to {@link #BATCH_BYTES}, each built into a small local index and
+	 * added to the shared index at once. The load of each worker is logged at the end.
+	 * 
+	 * @param inputPath The path to either a single file or a directory to process.
+	 * @param index The InvertedIndex instance to use for processing.
+	 * @param workQueue the Workqueue that will be used to execute said tasks
+	 * @param maxTasks the most tasks outstanding at once, or {@link #UNBOUNDED}
+	 * @throws IOException If an error occurs during file or directory processing.
+	 */
+	public static void processTextLargestFirst(Path inputPath, ThreadSafeInvertedIndex index, WorkQueue workQueue, int maxTasks) throws IOException {
+		processTextLargestFirst(inputPath, index, workQueue, maxTasks, false);
+	}
+
+	/**
+	 * Processes a given input path largest file first, optionally with every worker
+	 * building its own index.
+	 * 
+	 * @param inputPath The path to either a single file or a directory to process.
+	 * @param index The InvertedIndex instance to use for processing.
+	 * @param workQueue the Workqueue that will be used to execute said tasks
+	 * @param maxTasks the most tasks outstanding at once, or {@link #UNBOUNDED}
+	 * @param perWorker whether each worker should build its own index
+	 * @throws IOException If an error occurs during file or directory processing.
+	 * @see #processTextLargestFirst(Path, ThreadSafeInvertedIndex, WorkQueue, int)
+	 * @see #processText(Path, ThreadSafeInvertedIndex, WorkQueue, int, boolean)
+	 */
+	public static void processTextLargestFirst(Path inputPath, ThreadSafeInvertedIndex index, WorkQueue workQueue, int maxTasks, boolean perWorker) throws IOException {
+		List<Path> files = InvertedIndexProcessor.listTextFiles(inputPath);
+		HashMap<Path, Long> sizes = new HashMap<>();
+
+		for (Path file : files) {
+			sizes.put(file, Files.size(file));
+		}
+
+		files.sort(Comparator.comparing(sizes::get, Comparator.reverseOrder()));
+
+		Traversal traversal = new Traversal(index, workQueue, maxTasks, perWorker);
+		List<Path> batch = new ArrayList<>();
+		long batchBytes = 0;
+
+		for (Path file : files) {
+			long size = sizes.get(file);
+
+			if (size >= BATCH_SIZE) {
+				traversal.addFile(file);
+				continue;
+			}
+
+			batch.add(file);
+			batchBytes += size;
+
+			if (batchBytes >= BATCH_BYTES) {
+				traversal.submit(traversal.timed(new BatchTask(batch, traversal)));
+				batch = new ArrayList<>();
+				batchBytes = 0;
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			traversal.submit(traversal.timed(new BatchTask(batch, traversal)));
+		}
+
+		workQueue.finish();
+		traversal.reduce();
+		traversal.balance.log();
+	}
+
+	/**
+	 * Brings an index that was built from the same input path up to date. Only new
+	 * or modified files are processed again, and the old words of modified or
+	 * deleted files are removed first. The manifest is updated to match.
+	 * 
+	 * @param inputPath The path to either a single file or a directory to process.
+	 * @param index The index built on an earlier run, matching the manifest.
+	 * @param workQueue the Workqueue that will be used to execute said tasks
+	 * @param manifest The manifest of the files in the index.
+	 * @return The changes that were made to the index.
+	 * @throws IOException If an error occurs during file or directory processing.
+	 */
+	public static IndexManifest.Changes processIncremental(Path inputPath, ThreadSafeInvertedIndex index, WorkQueue workQueue, IndexManifest manifest) throws IOException {
+		IndexManifest.Changes changes = manifest.update(InvertedIndexProcessor.listTextFiles(inputPath));
+		index.removeLocations(changes.getRemoved());
+
+		Traversal traversal = new Traversal(index, workQueue, UNBOUNDED, false);
+		for (Path file : changes.getChanged()) {
+			traversal.addFile(file);
+		}
+
+		workQueue.finish();
+		return changes;
+	}
+
+	/**
+	 * Walks a tree of text files, turning every directory and file into tasks on the
+	 * work queue, optionally with a cap on how many are outstanding at once.
+	 */
+	private static class Traversal {
+		/** The index to add the files to */
+		private final ThreadSafeInvertedIndex index;
+
+		/** The work queue to run the tasks on */
+		private final WorkQueue workQueue;
+
+		/** One permit per task that may be outstanding, or null if there is no cap */
+		private final Semaphore permits;
+
+		/** The time each worker spends indexing */
+		private final LoadBalance balance;
+
+		/** The index of each worker when they build their own, or null to add to the shared index */
+		private final ConcurrentHashMap<Thread, InvertedIndex> locals;
+
+		/**
+		 * Initializes a traversal.
+		 *
+		 * @param index the index to add the files to
+		 * @param workQueue the work queue to run the tasks on
+		 * @param maxTasks the most tasks outstanding at once, or {@link #UNBOUNDED}
+		 * @param perWorker whether each worker should build its own index
+		 */
+		public Traversal(ThreadSafeInvertedIndex index, WorkQueue workQueue, int maxTasks, boolean perWorker) {
+			this.index = index;
+			this.workQueue = workQueue;
+			this.permits = maxTasks > 0 ? new Semaphore(maxTasks) : null;
+			this.balance = new LoadBalance();
+			this.locals = perWorker ? new ConcurrentHashMap<>() : null;
+		}
+
+		/**
+		 * Adds a file to the index of the current worker, or to the shared index.
+		 *
+		 * @param file the words of the file
+		 */
+		public void add(FileIndexBuilder file) {
+			if (locals == null) {
+				index.addDistinct(file);
+			} else {
+				locals.computeIfAbsent(Thread.currentThread(), thread -> new InvertedIndex()).addDistinct(file);
+			}
+		}
+
+		/**
+		 * Adds a batch of files to the index of the current worker, or to the shared index.
+		 *
+		 * @param batch the index of the files
+		 */
+		public void add(InvertedIndex batch) {
+			if (locals == null) {
+				index.addDistinct(batch);
+			} else {
+				locals.computeIfAbsent(Thread.currentThread(), thread -> new InvertedIndex()).addDistinct(batch);
+			}
+		}
+
+		/**
+		 * Merges the indexes of the workers into the shared index, once every task
+		 * has finished. Pairs are merged at the same time on the work queue, the
+		 * smaller into the larger, until only one is left.
+		 */
+		public void reduce() {
+			if (locals == null) {
+				return;
+			}
+
+			// the work queue finished, so every worker is done with its index
+			List<InvertedIndex> level = new ArrayList<>(locals.values());
+			locals.clear();
+
+			while (level.size() > 1) {
+				List<InvertedIndex> next = new ArrayList<>();
+
+				for (int i = 0; i + 1 < level.size(); i += 2) {
+					InvertedIndex first = level.get(i);
+					InvertedIndex second = level.get(i + 1);
+
+					InvertedIndex larger = first.numWords() >= second.numWords() ? first : second;
+					InvertedIndex smaller = larger == first ? second : first;
+
+					workQueue.execute(() -> larger.addDistinct(smaller));
+					next.add(larger);
+				}
+
+				if (level.size() % 2 == 1) {
+					next.add(level.get(level.size() - 1));
+				}
+
+				workQueue.finish();
+				level = next;
+			}
+
+			if (!level.isEmpty()) {
+				index.addDistinct(level.get(0));
+			}
+		}
+
+		/**
+		 * Wraps an indexing task so its time is added to the load of whichever
+		 * thread runs it.
+		 *
+		 * @param task the task to time
+		 * @return the timed task
+		 */
+		public Runnable timed(Runnable task) {
+			return () -> {
+				long start = System.nanoTime();
+				try {
+					task.run();
+				} finally {
+					balance.record(System.nanoTime() - start);
+				}
+			};
+		}
+
+		/**
+		 * Queues a task, or runs it right away on this thread if the cap is reached.
+		 *
+		 * @param task the task to run
+		 */
+		public void submit(Runnable task) {
+			if (permits == null) {
+				workQueue.execute(task);
+			} else if (permits.tryAcquire()) {
+				try {
+					workQueue.execute(() -> {
+						try {
+							task.run();
+						} finally {
+							permits.release();
+						}
+					});
+				} catch (RuntimeException e) {
+					// a rejected task never runs, so its permit would never come back
+					permits.release();
+					throw e;
+				}
+			} else {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// a bad file or directory should not stop the listing that found it
+					log.catching(Level.WARN, e);
+				}
+			}
+		}
+
+		/**
+		 * Lists a directory on this thread, queueing a task for every subdirectory
+		 * and text file in it.
+		 *
+		 * @param dirPath the directory to list
+		 * @throws IOException if the directory cannot be listed
+		 */
+		public void listDirectory(Path dirPath) throws IOException {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
+				for (Path entry : stream) {
+					if (Files.isDirectory(entry)) {
+						submit(new DirectoryTask(entry));
+					} else if (Files.isRegularFile(entry) && InvertedIndexProcessor.isTextFile(entry)) {
+						addFile(entry);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Queues the indexing of a file, in parts if it is big enough.
+		 *
+		 * @param path the file to index
+		 * @throws IOException if an error occurs while looking at the file
+		 */
+		public void addFile(Path path) throws IOException {
+			long parts = Math.min(workQueue.size(), Files.size(path) / PART_SIZE);
+
+			if (parts < 2) {
+				submit(timed(locals == null ? new Task(path, index) : new FileTask(path)));
+				return;
+			}
+
+			long[] offsets = TextFileReader.splitLines(path, (int) parts);
+			SplitFile file = new SplitFile(path, this, offsets.length - 1);
+
+			for (int i = 0; i < offsets.length - 1; i++) {
+				submit(timed(file.new PartTask(i, offsets[i], offsets[i + 1])));
+			}
+		}
+
+		/**
+		 * Indexes one file into the index of whichever worker runs it.
+		 */
+		private class FileTask implements Runnable {
+			/** The file to index */
+			private final Path path;
+
+			/**
+			 * Creates a task to index a file.
+			 *
+			 * @param path the file to index
+			 */
+			public FileTask(Path path) {
+				this.path = path;
+			}
+
+			@Override
+			public void run() {
+				try {
+					add(InvertedIndexProcessor.buildFile(path));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		/**
+		 * Lists one directory of the tree.
+		 */
+		private class DirectoryTask implements Runnable {
+			/** The directory to list */
+			private final Path dirPath;
+
+			/**
+			 * Creates a task to list a directory.
+			 *
+			 * @param dirPath the directory to list
+			 */
+			public DirectoryTask(Path dirPath) {
+				this.dirPath = dirPath;
+			}
+
+			@Override
+			public void run() {
+				try {
+					listDirectory(dirPath);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
 	}
 
 
@@ -93,18 +512,224 @@ public class MultiThreadInvertedIndexProcessor {
 		@Override
 		public void run() {
 			try {
-				// Create a local inverted index
-				InvertedIndex localIndex = new InvertedIndex();
+				// Collect the file without holding any locks
+				FileIndexBuilder file = InvertedIndexProcessor.buildFile(path);
 
-				// Process the file and update the local index
-				InvertedIndexProcessor.processFile(path, localIndex);
-
-				// Safely add the local index to the shared index
-				index.addDistinct(localIndex);
+				// Safely add the whole file to the shared index
+				index.addDistinct(file);
 
 			} catch (IOException e) {
 				throw new UncheckedIOException(e);
 			}
 		}
 	}
+
+	/**
+	 * Indexes a batch of small files into a local index and adds them to the shared
+	 * index at once, so the lock is taken once per batch instead of once per file.
+	 */
+	private static class BatchTask implements Runnable {
+		/** The files of the batch */
+		private final List<Path> files;
+
+		/** The traversal that adds the files to an index */
+		private final Traversal traversal;
+
+		/**
+		 * Creates a task for a batch of files.
+		 *
+		 * @param files the files of the batch
+		 * @param traversal the traversal that adds the files to an index
+		 */
+		public BatchTask(List<Path> files, Traversal traversal) {
+			this.files = files;
+			this.traversal = traversal;
+		}
+
+		@Override
+		public void run() {
+			InvertedIndex local = new InvertedIndex();
+
+			for (Path file : files) {
+				try {
+					local.addDistinct(InvertedIndexProcessor.buildFile(file));
+				} catch (IOException e) {
+					// like a single task, a file that cannot be read is left out
+					log.catching(Level.WARN, new UncheckedIOException(e));
+				}
+			}
+
+			traversal.add(local);
+		}
+	}
+
+	/**
+	 * Keeps track of how many indexing tasks each worker ran and how long they took,
+	 * to see how evenly the work was spread.
+	 */
+	private static class LoadBalance {
+		/** The load of each thread, name : [tasks, nanoseconds] */
+		private final ConcurrentHashMap<String, long[]> loads;
+
+		/**
+		 * Initializes an empty record.
+		 */
+		public LoadBalance() {
+			this.loads = new ConcurrentHashMap<>();
+		}
+
+		/**
+		 * Adds a finished task to the load of the current thread.
+		 *
+		 * @param nanos how long the task took
+		 */
+		public void record(long nanos) {
+			// every thread only ever updates its own entry
+			long[] load = loads.computeIfAbsent(Thread.currentThread().getName(), name -> new long[2]);
+			synchronized (load) {
+				load[0]++;
+				load[1] += nanos;
+			}
+		}
+
+		/**
+		 * Reports the load of every thread and how far the busiest was from the
+		 * average.
+		 */
+		public void log() {
+			TreeMap<String, long[]> sorted = new TreeMap<>(loads);
+			long total = 0;
+			long busiest = 0;
+
+			for (var entry : sorted.entrySet()) {
+				long[] load = entry.getValue();
+				synchronized (load) {
+					stats.info("{}: {} tasks, {} ms", entry.getKey(), load[0], load[1] / 1_000_000);
+					total += load[1];
+					busiest = Math.max(busiest, load[1]);
+				}
+			}
+
+			if (!sorted.isEmpty() && total > 0) {
+				stats.info("Busiest worker at {} of the average load", String.format("%.2f", busiest * (double) sorted.size() / total));
+			}
+		}
+	}
+
+	/**
+	 * A large file being indexed in parts. Every part is indexed on its own with
+	 * positions starting over from 1, and whichever part finishes last joins them
+	 * in order, moving the positions of each part past the number of words in the
+	 * parts before it, and adds the whole file to the index at once. No task ever
+	 * waits for another, so the parts can share the work queue with everything else.
+	 */
+	private static class SplitFile {
+		/** The file being split */
+		private final Path path;
+
+		/** The traversal that adds the file to an index */
+		private final Traversal traversal;
+
+		/** The words of each part, filled in as the parts finish */
+		private final FileIndexBuilder[] parts;
+
+		/** The number of parts still running */
+		private final AtomicInteger remaining;
+
+		/** Set if any part could not be read, guarded by this object */
+		private IOException failure;
+
+		/**
+		 * Initializes a file split into parts.
+		 *
+		 * @param path the file being split
+		 * @param traversal the traversal that adds the file to an index
+		 * @param numParts the number of parts
+		 */
+		public SplitFile(Path path, Traversal traversal, int numParts) {
+			this.path = path;
+			this.traversal = traversal;
+			this.parts = new FileIndexBuilder[numParts];
+			this.remaining = new AtomicInteger(numParts);
+		}
+
+		/**
+		 * Records a finished part, and joins and adds the file if it was the last one.
+		 *
+		 * @param part the index of the part
+		 * @param builder the words of the part, or null if it failed
+		 * @param thrown the exception of the part, or null if it did not fail
+		 */
+		private void finish(int part, FileIndexBuilder builder, IOException thrown) {
+			synchronized (this) {
+				parts[part] = builder;
+				if (thrown != null && failure == null) {
+					failure = thrown;
+				}
+			}
+
+			if (remaining.decrementAndGet() > 0) {
+				return;
+			}
+
+			IOException failed;
+			synchronized (this) {
+				failed = failure;
+			}
+
+			// like a single task, a file that cannot be read is left out of the index
+			if (failed != null) {
+				throw new UncheckedIOException(failed);
+			}
+
+			FileIndexBuilder whole = parts[0];
+			for (int i = 1; i < parts.length; i++) {
+				whole.append(parts[i]);
+				parts[i] = null;
+			}
+
+			traversal.add(whole);
+		}
+
+		/**
+		 * Indexes one part of the file.
+		 */
+		private class PartTask implements Runnable {
+			/** The index of the part */
+			private final int part;
+
+			/** The offset of the first byte of the part */
+			private final long start;
+
+			/** The offset just past the last byte of the part */
+			private final long end;
+
+			/**
+			 * Creates a task for one part of the file.
+			 *
+			 * @param part the index of the part
+			 * @param start the offset of the first byte of the part
+			 * @param end the offset just past the last byte of the part
+			 */
+			public PartTask(int part, long start, long end) {
+				this.part = part;
+				this.start = start;
+				this.end = end;
+			}
+
+			@Override
+			public void run() {
+				FileIndexBuilder builder = null;
+				IOException thrown = null;
+
+				try {
+					builder = InvertedIndexProcessor.buildPart(path, start, end, Analyzer.DEFAULT);
+				} catch (IOException e) {
+					thrown = e;
+				}
+
+				finish(part, builder, thrown);
+			}
+		}
+	}
 }
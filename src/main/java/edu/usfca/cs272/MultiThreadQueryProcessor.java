@@ -1,12 +1,12 @@
 package edu.usfca.cs272;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**The MultiThreadQueryProcessor
  * Is the Multi-threaded version of the original QueryProcessor
@@ -19,28 +19,60 @@ import java.util.TreeSet;
  */
 public class MultiThreadQueryProcessor implements QueryInterface {
 
-	/** The InvertedIndex class... */
-	private final ThreadSafeInvertedIndex index;
+	/** The InvertedIndex class, must be safe to search from multiple threads... */
+	private final InvertedIndex index;
 
 	/** To determine partial/exact search */
 	private final boolean isPartial;
 
+	/** The most results to keep for each query */
+	private final int limit;
+
 	/** The data structure for results from query searches */
 	private final TreeMap<String, List<InvertedIndex.FileResult>> resultsMap;
 
-	/** Creating a workQueue */
-	private final WorkQueue workQueue;
+	/** Where the searches run, either a whole work queue or a group of tasks on one */
+	private final TaskInterface workQueue;
+
+	/** Turns query lines into stems and keys, with a tokenizer and stemmer per worker */
+	private final Analyzer analyzer;
 
 
 	/**Constructor to establish the values for index, isPartial, and resultsMap
 	 * 
-	 * @param indexTS is the threadSafeInvertedIndex with thread safe methods with locks
+	 * @param indexTS is an index that is safe to search from multiple threads, either a
+	 *   threadSafeInvertedIndex with locks or a frozen index that never changes
+	 * @param isPartial is a boolean value to determine exact or partial search...
+	 * @param workQueue is for thread usages, a work queue or a group of tasks on one
+	 */
+	public MultiThreadQueryProcessor(InvertedIndex indexTS, boolean isPartial, TaskInterface workQueue) {
+		this(indexTS, isPartial, workQueue, InvertedIndex.ALL_RESULTS);
+	}
+
+	/**Constructor that only keeps the best results of each query
+	 * 
+	 * @param indexTS is an index that is safe to search from multiple threads
+	 * @param isPartial is a boolean value to determine exact or partial search...
+	 * @param workQueue is for thread usages, a work queue or a group of tasks on one
+	 * @param limit the most results to keep for each query, or {@link InvertedIndex#ALL_RESULTS}
+	 */
+	public MultiThreadQueryProcessor(InvertedIndex indexTS, boolean isPartial, TaskInterface workQueue, int limit) {
+		this(indexTS, isPartial, workQueue, limit, Analyzer.DEFAULT);
+	}
+
+	/**Constructor with a specific analyzer for the query lines
+	 * 
+	 * @param indexTS is an index that is safe to search from multiple threads
 	 * @param isPartial is a boolean value to determine exact or partial search...
-	 * @param workQueue is for thread usages...
+	 * @param workQueue is for thread usages, a work queue or a group of tasks on one
+	 * @param limit the most results to keep for each query, or {@link InvertedIndex#ALL_RESULTS}
+	 * @param analyzer turns query lines into stems, should match the one used for the index
 	 */
-	public MultiThreadQueryProcessor(ThreadSafeInvertedIndex indexTS, boolean isPartial, WorkQueue workQueue) {
+	public MultiThreadQueryProcessor(InvertedIndex indexTS, boolean isPartial, TaskInterface workQueue, int limit, Analyzer analyzer) {
+		this.analyzer = analyzer;
 		this.index = indexTS;
 		this.isPartial = isPartial;
+		this.limit = limit;
 		this.resultsMap = new TreeMap<String, List<InvertedIndex.FileResult>>();
 		this.workQueue = workQueue;
 	}
@@ -53,8 +85,7 @@ public class MultiThreadQueryProcessor implements QueryInterface {
 	 */
 	@Override
 	public boolean hasQuery(String query) {
-		TreeSet<String> stemmedQueries = FileStemmer.uniqueStems(query);
-		String processedQuery = String.join(" ", stemmedQueries);
+		String processedQuery = analyzer.queryKey(query);
 
 		synchronized (resultsMap) {
 			return resultsMap.containsKey(processedQuery);
@@ -80,12 +111,13 @@ public class MultiThreadQueryProcessor implements QueryInterface {
 	 */
 	@Override
 	public List<InvertedIndex.FileResult> getResultsForQuery(String query) {
-		TreeSet<String> stemmedQueries = FileStemmer.uniqueStems(query);
-		String processedQuery = String.join(" ", stemmedQueries);
+		String processedQuery = analyzer.queryKey(query);
 
 		synchronized(resultsMap) {
-			if (resultsMap.containsKey(processedQuery)) {
-				return Collections.unmodifiableList(resultsMap.get(processedQuery));
+			List<InvertedIndex.FileResult> results = resultsMap.get(processedQuery);
+
+			if (results != null) {
+				return Collections.unmodifiableList(results);
 			}
 		}
 		return Collections.emptyList();
@@ -99,12 +131,22 @@ public class MultiThreadQueryProcessor implements QueryInterface {
 	 * given, we split to either search exact or partial
 	 * 
 	 * @param queryPath The given path that holds the address to file
-	 * @throws IOException throws io exception if issues hit
+	 * @throws IOException throws io exception if issues hit, or if interrupted
+	 *   before every search finished
 	 */
 	@Override
 	public void processQuery(Path queryPath) throws IOException {
 		QueryInterface.super.processQuery(queryPath);
-		workQueue.finish();
+
+		try {
+			workQueue.finish();
+		} catch (InterruptedException e) {
+			// the results are incomplete, so they must not be written out
+			Thread.currentThread().interrupt();
+			InterruptedIOException stopped = new InterruptedIOException("Interrupted before every query was searched");
+			stopped.initCause(e);
+			throw stopped;
+		}
 	}
 
 
@@ -114,7 +156,7 @@ public class MultiThreadQueryProcessor implements QueryInterface {
 	 */
 	@Override
 	public void processQuery(String line) {
-		workQueue.execute(new Task((line)));
+		workQueue.execute(new Task((line)), WorkQueue.Priority.HIGH);
 	}
 
 
@@ -160,20 +202,18 @@ public class MultiThreadQueryProcessor implements QueryInterface {
 		 */
 		@Override
 		public void run() {
-			TreeSet<String> cleanedUniqueQueries = FileStemmer.uniqueStems(line);
-
-			String query = String.join(" ", cleanedUniqueQueries);
+			Analyzer.Query query = analyzer.query(line);
 
 			synchronized (resultsMap) {
-				if (cleanedUniqueQueries.isEmpty() || resultsMap.containsKey(query)) {
+				if (query.isEmpty() || resultsMap.containsKey(query.getKey())) {
 					return;
 				}
 			}
 
-			var local = index.search(cleanedUniqueQueries, isPartial);
+			var local = index.search(query.getStems(), isPartial, limit);
 
 			synchronized (resultsMap) {
-				resultsMap.put(query, local);
+				resultsMap.put(query.getKey(), local);
 			}
 		}
 	}
@@ -0,0 +1,358 @@
+package edu.usfca.cs272;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A sorted set of word positions stored as primitive ints, used instead of a
+ * {@code TreeSet<Integer>} to avoid a boxed Integer and a tree node per position.
+ * Positions are almost always added in increasing order, so appending is the fast
+ * path and anything out of order falls back to an insert.
+ *
+ * When packed, only the gap between each position and the one before it is kept,
+ * written as a variable length integer using 7 bits per byte. Most gaps fit in a
+ * single byte, at the cost of decoding the list to search it.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class PositionList extends AbstractSet<Integer> {
+	/** The positions in sorted order when not packed */
+	private int[] positions;
+
+	/** The delta and varint encoded positions when packed */
+	private byte[] packed;
+
+	/** The number of bytes used in the packed array */
+	private int length;
+
+	/** The number of positions in the list */
+	private int size;
+
+	/** The last (largest) position in the list */
+	private int last;
+
+	/**
+	 * Initializes an empty list that is not packed.
+	 */
+	public PositionList() {
+		this(false);
+	}
+
+	/**
+	 * Initializes an empty list.
+	 *
+	 * @param pack whether to delta and varint encode the positions
+	 */
+	public PositionList(boolean pack) {
+		if (pack) {
+			this.packed = new byte[4];
+		} else {
+			this.positions = new int[2];
+		}
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Checks if the positions are delta and varint encoded.
+	 *
+	 * @return true if the list is packed
+	 */
+	public boolean isPacked() {
+		return packed != null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the largest position in the list.
+	 *
+	 * @return the last position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	/**
+	 * Adds a position to the list if it is not already present.
+	 *
+	 * @param position the position to add
+	 * @return true if the list changed
+	 */
+	public boolean add(int position) {
+		if (size == 0 || position > last) {
+			append(position);
+			return true;
+		}
+
+		if (position == last) {
+			return false;
+		}
+
+		int[] values = toIntArray();
+		int index = Arrays.binarySearch(values, position);
+
+		if (index >= 0) {
+			return false;
+		}
+
+		index = -index - 1;
+		int[] inserted = new int[size + 1];
+		System.arraycopy(values, 0, inserted, 0, index);
+		inserted[index] = position;
+		System.arraycopy(values, index, inserted, index + 1, size - index);
+		replace(inserted);
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer position) {
+		return add(position.intValue());
+	}
+
+	/**
+	 * Adds all the positions of another list to this list.
+	 *
+	 * @param other the list of positions to add
+	 * @return true if the list changed
+	 */
+	public boolean addAll(PositionList other) {
+		if (other.size == 0) {
+			return false;
+		}
+
+		var iterator = other.iterator();
+
+		// Lists from different files or later parts of a file only append
+		if (size == 0 || other.first() > last) {
+			while (iterator.hasNext()) {
+				append(iterator.nextInt());
+			}
+			return true;
+		}
+
+		int[] values = toIntArray();
+		int[] merged = new int[size + other.size];
+		int count = 0;
+		int i = 0;
+		int next = iterator.nextInt();
+		boolean more = true;
+
+		while (i < values.length || more) {
+			if (!more || (i < values.length && values[i] < next)) {
+				merged[count++] = values[i++];
+			} else {
+				if (i < values.length && values[i] == next) {
+					i++;
+				}
+				merged[count++] = next;
+				more = iterator.hasNext();
+				next = more ? iterator.nextInt() : 0;
+			}
+		}
+
+		boolean modified = count != size;
+		replace(Arrays.copyOf(merged, count));
+		return modified;
+	}
+
+	/**
+	 * Returns the smallest position in the list.
+	 *
+	 * @return the first position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int first() {
+		return iterator().nextInt();
+	}
+
+	/**
+	 * Checks if the list contains a position.
+	 *
+	 * @param position the position to check
+	 * @return true if the position is in the list
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position > last) {
+			return false;
+		}
+
+		if (!isPacked()) {
+			return Arrays.binarySearch(positions, 0, size, position) >= 0;
+		}
+
+		var iterator = iterator();
+		while (iterator.hasNext()) {
+			int next = iterator.nextInt();
+			if (next >= position) {
+				return next == position;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer && contains(((Integer) o).intValue());
+	}
+
+	/**
+	 * Delta and varint encodes the positions if they are not already packed.
+	 *
+	 * @return this list
+	 */
+	public PositionList pack() {
+		if (!isPacked()) {
+			int[] values = toIntArray();
+			this.positions = null;
+			this.packed = new byte[Math.max(4, size * 5)];
+			replace(values);
+			this.packed = Arrays.copyOf(packed, Math.max(4, length));
+		}
+		return this;
+	}
+
+	/**
+	 * Copies the positions into a new sorted array.
+	 *
+	 * @return the positions as an int array
+	 */
+	public int[] toIntArray() {
+		if (!isPacked()) {
+			return Arrays.copyOf(positions, size);
+		}
+
+		int[] values = new int[size];
+		var iterator = iterator();
+		for (int i = 0; i < size; i++) {
+			values[i] = iterator.nextInt();
+		}
+		return values;
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt iterator() {
+		return isPacked() ? new PackedIterator() : new ArrayIterator();
+	}
+
+	/**
+	 * Adds a position larger than every other position to the end of the list
+	 * without checking the order. Used when positions are known to only increase,
+	 * such as while reading a single file.
+	 *
+	 * @param position the position to append, must be larger than {@link #last()}
+	 */
+	public void append(int position) {
+		if (isPacked()) {
+			// the gap is treated as unsigned so any int position can be appended
+			int delta = position - (size == 0 ? 0 : last);
+
+			if (length + 5 > packed.length) {
+				packed = Arrays.copyOf(packed, Math.max(length + 5, packed.length * 2));
+			}
+
+			while ((delta & ~0x7F) != 0) {
+				packed[length++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			packed[length++] = (byte) delta;
+		} else {
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			positions[size] = position;
+		}
+
+		size++;
+		last = position;
+	}
+
+	/**
+	 * Replaces the contents of the list, keeping the current encoding.
+	 *
+	 * @param values the new positions in sorted order without duplicates
+	 */
+	private void replace(int[] values) {
+		size = 0;
+		length = 0;
+
+		if (!isPacked() && positions.length < values.length) {
+			positions = new int[values.length];
+		}
+
+		for (int value : values) {
+			append(value);
+		}
+	}
+
+	/**
+	 * Iterates through the positions of a list that is not packed.
+	 */
+	private class ArrayIterator implements PrimitiveIterator.OfInt {
+		/** The index of the next position */
+		private int index = 0;
+
+		@Override
+		public boolean hasNext() {
+			return index < size;
+		}
+
+		@Override
+		public int nextInt() {
+			if (index >= size) {
+				throw new NoSuchElementException();
+			}
+			return positions[index++];
+		}
+	}
+
+	/**
+	 * Iterates through the positions of a packed list by decoding the gaps.
+	 */
+	private class PackedIterator implements PrimitiveIterator.OfInt {
+		/** The offset of the next byte to decode */
+		private int offset = 0;
+
+		/** The last position decoded */
+		private int current = 0;
+
+		@Override
+		public boolean hasNext() {
+			return offset < length;
+		}
+
+		@Override
+		public int nextInt() {
+			if (offset >= length) {
+				throw new NoSuchElementException();
+			}
+
+			int delta = 0;
+			int shift = 0;
+			byte next;
+
+			do {
+				next = packed[offset++];
+				delta |= (next & 0x7F) << shift;
+				shift += 7;
+			} while (next < 0);
+
+			current += delta;
+			return current;
+		}
+	}
+}
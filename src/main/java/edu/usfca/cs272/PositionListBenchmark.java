@@ -0,0 +1,205 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Measures how many bytes of heap each posting (one word at one position) takes
+ * when the positions are kept in a {@code TreeSet<Integer>}, like the index used
+ * to, in a {@link PositionList}, and in a packed {@link PositionList}. Only the
+ * position sets and one reference to each are counted, the maps around them are
+ * the same either way.
+ *
+ * The positions come from the text files of a directory when one is given, and
+ * otherwise from made up documents with word frequencies that fall off like
+ * natural text does, so most words only show up a few times in each document.
+ * Memory is measured as the change in used heap after a garbage collection, so
+ * the numbers are only good to a few percent, and the documents of a small
+ * directory are indexed several times over to make the change big enough.
+ *
+ * Usage: {@code PositionListBenchmark [directory]}
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class PositionListBenchmark {
+	/** The number of made up documents */
+	private static final int DOCUMENTS = 400;
+
+	/** The number of words in each made up document */
+	private static final int WORDS = 5_000;
+
+	/** The number of different words in the made up documents */
+	private static final int VOCABULARY = 20_000;
+
+	/** The fewest postings to measure, small directories are repeated to get here */
+	private static final long MIN_POSTINGS = 2_000_000;
+
+	/**
+	 * Runs the benchmark and prints the bytes per posting of each kind of set.
+	 *
+	 * @param args the directory of text files to use, if any
+	 * @throws IOException if the directory cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		List<List<String>> documents = args.length > 0 ? read(Path.of(args[0])) : generate();
+
+		long postings = documents.stream().mapToLong(List::size).sum();
+		System.out.printf("%d documents, %d postings%n", documents.size(), postings);
+
+		if (postings > 0 && postings < MIN_POSTINGS) {
+			long copies = (MIN_POSTINGS + postings - 1) / postings;
+			List<List<String>> repeated = new ArrayList<>();
+
+			for (long i = 0; i < copies; i++) {
+				repeated.addAll(documents);
+			}
+
+			documents = repeated;
+			postings *= copies;
+		}
+
+		System.out.printf("%-18s %16s%n", "set", "bytes per posting");
+
+		report("TreeSet<Integer>", documents, postings, TreeSet::new);
+		report("PositionList", documents, postings, () -> new PositionList(false));
+		report("packed", documents, postings, () -> new PositionList(true));
+	}
+
+	/**
+	 * Measures one kind of set and prints a line of the table.
+	 *
+	 * @param name the name of the kind of set
+	 * @param documents the stems of each document in order
+	 * @param postings the total number of postings
+	 * @param sets creates an empty set
+	 */
+	private static void report(String name, List<List<String>> documents, long postings, Supplier<Set<Integer>> sets) {
+		System.out.printf("%-18s %16.2f%n", name, (double) measure(documents, sets) / postings);
+	}
+
+	/**
+	 * Measures the heap used by the position sets of every word in every document.
+	 *
+	 * @param documents the stems of each document in order
+	 * @param sets creates an empty set
+	 * @return the number of bytes used by the sets
+	 */
+	public static long measure(List<List<String>> documents, Supplier<Set<Integer>> sets) {
+		ArrayList<Set<Integer>> kept = new ArrayList<>();
+		long before = usedMemory();
+
+		for (List<String> document : documents) {
+			Map<String, Set<Integer>> positions = new HashMap<>();
+			int position = 1;
+
+			for (String stem : document) {
+				Set<Integer> set = positions.computeIfAbsent(stem, s -> sets.get());
+
+				if (set instanceof PositionList) {
+					((PositionList) set).append(position++);
+				} else {
+					set.add(position++);
+				}
+			}
+
+			kept.addAll(positions.values());
+		}
+
+		// one reference per set is counted, like the map holding it in the index has
+		kept.trimToSize();
+		long used = usedMemory() - before;
+		Reference.reachabilityFence(kept);
+		return used;
+	}
+
+	/**
+	 * Returns the heap in use once the garbage has been collected.
+	 *
+	 * @return the number of bytes in use
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+
+		return used;
+	}
+
+	/**
+	 * Stems every text file in a directory.
+	 *
+	 * @param directory the directory to read
+	 * @return the stems of each file in order
+	 * @throws IOException if a file cannot be read
+	 */
+	private static List<List<String>> read(Path directory) throws IOException {
+		List<List<String>> documents = new ArrayList<>();
+
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+				String lower = path.getFileName().toString().toLowerCase();
+
+				if (lower.endsWith(".txt") || lower.endsWith(".text")) {
+					documents.add(FileStemmer.listStems(path));
+				}
+			}
+		}
+
+		return documents;
+	}
+
+	/**
+	 * Makes up documents whose words follow Zipf's law, where the k-th most common
+	 * word shows up about 1/k as often as the most common one.
+	 *
+	 * @return the words of each document in order
+	 */
+	private static List<List<String>> generate() {
+		Random random = new Random(272);
+		double[] cumulative = new double[VOCABULARY];
+		double total = 0;
+
+		for (int k = 0; k < VOCABULARY; k++) {
+			total += 1.0 / (k + 1);
+			cumulative[k] = total;
+		}
+
+		String[] words = new String[VOCABULARY];
+		for (int k = 0; k < VOCABULARY; k++) {
+			words[k] = "w" + k;
+		}
+
+		List<List<String>> documents = new ArrayList<>();
+
+		for (int d = 0; d < DOCUMENTS; d++) {
+			List<String> document = new ArrayList<>(WORDS);
+
+			for (int i = 0; i < WORDS; i++) {
+				int k = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+				document.add(words[k < 0 ? Math.min(-k - 1, VOCABULARY - 1) : k]);
+			}
+
+			documents.add(document);
+		}
+
+		return documents;
+	}
+}
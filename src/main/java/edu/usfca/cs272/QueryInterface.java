@@ -51,6 +51,17 @@ public interface QueryInterface {
 	 */
 	List<InvertedIndex.FileResult> getResultsForQuery(String query);
 
+	/**Retrieves only the best results of a query that has been processed
+	 * 
+	 * @param query input to search from the results map
+	 * @param limit the most results to return
+	 * @return an unmodifiable list of at most limit results, best first
+	 */
+	public default List<InvertedIndex.FileResult> getResultsForQuery(String query, int limit) {
+		List<InvertedIndex.FileResult> results = getResultsForQuery(query);
+		return results.size() <= limit ? results : results.subList(0, Math.max(0, limit));
+	}
+
 	/**
 	 * ProcessQuery is the start of the search exact/partial functionality. It first
 	 * creates a list of strings that will hold all the unique queries Then using an
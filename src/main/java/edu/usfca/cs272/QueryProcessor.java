@@ -1,17 +1,11 @@
 package edu.usfca.cs272;
 
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
-
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
-
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Handles query functionality. Both partial/exact
@@ -28,8 +22,11 @@ public class QueryProcessor implements QueryInterface {
 	/** To determine partial/exact search */
 	private final boolean isPartial;
 
-	/** Made stemmer a member of the class for reusability */
-	private final Stemmer stemmer;
+	/** The most results to keep for each query */
+	private final int limit;
+
+	/** Turns query lines into stems and keys, reusing its tokenizer and stemmer */
+	private final Analyzer analyzer;
 
 	/** The data structure for results from query searches */
 	private final TreeMap<String, List<InvertedIndex.FileResult>> resultsMap;
@@ -42,9 +39,33 @@ public class QueryProcessor implements QueryInterface {
 	 * @param isPartial to determine either partial/exact search
 	 */
 	public QueryProcessor(InvertedIndex index, boolean isPartial) {
+		this(index, isPartial, InvertedIndex.ALL_RESULTS);
+	}
+
+	/**
+	 * Initialize, keeping only the best results of each query
+	 * 
+	 * @param index to use inverted index methods
+	 * @param isPartial to determine either partial/exact search
+	 * @param limit the most results to keep for each query, or {@link InvertedIndex#ALL_RESULTS}
+	 */
+	public QueryProcessor(InvertedIndex index, boolean isPartial, int limit) {
+		this(index, isPartial, limit, Analyzer.DEFAULT);
+	}
+
+	/**
+	 * Initialize with a specific analyzer for the query lines
+	 * 
+	 * @param index to use inverted index methods
+	 * @param isPartial to determine either partial/exact search
+	 * @param limit the most results to keep for each query, or {@link InvertedIndex#ALL_RESULTS}
+	 * @param analyzer turns query lines into stems, should match the one used for the index
+	 */
+	public QueryProcessor(InvertedIndex index, boolean isPartial, int limit, Analyzer analyzer) {
 		this.index = index;
 		this.isPartial = isPartial;
-		this.stemmer = new SnowballStemmer(ENGLISH);
+		this.limit = limit;
+		this.analyzer = analyzer;
 		this.resultsMap = new TreeMap<String, List<InvertedIndex.FileResult>>();
 	}
 
@@ -64,9 +85,7 @@ public class QueryProcessor implements QueryInterface {
 	 */
 	@Override
 	public boolean hasQuery(String query) {
-		TreeSet<String> stemmedQueries = FileStemmer.uniqueStems(query, stemmer);
-		String processedQuery = String.join(" ", stemmedQueries);
-		return resultsMap.containsKey(processedQuery);
+		return resultsMap.containsKey(analyzer.queryKey(query));
 	}
 
 	/**Retrieves an unmodifiable set of all the queries processed.
@@ -86,11 +105,10 @@ public class QueryProcessor implements QueryInterface {
 	 */
 	@Override
 	public List<InvertedIndex.FileResult> getResultsForQuery(String query) {
-		TreeSet<String> stemmedQueries = FileStemmer.uniqueStems(query, stemmer);
-		String processedQuery = String.join(" ", stemmedQueries);
+		List<InvertedIndex.FileResult> results = resultsMap.get(analyzer.queryKey(query));
 
-		if (hasQuery(processedQuery)) {
-			return Collections.unmodifiableList(resultsMap.get(processedQuery));
+		if (results != null) {
+			return Collections.unmodifiableList(results);
 		} 
 		return Collections.emptyList();
 	}
@@ -102,14 +120,12 @@ public class QueryProcessor implements QueryInterface {
 	 */
 	@Override
 	public void processQuery(String line) {
-		TreeSet<String> cleanedUniqueQueries = FileStemmer.uniqueStems(line, stemmer);
-
-		String query = String.join(" ", cleanedUniqueQueries);
+		Analyzer.Query query = analyzer.query(line);
 
-		if (!cleanedUniqueQueries.isEmpty() && !resultsMap.containsKey(query)) {
-			List<InvertedIndex.FileResult> sortedResults = index.search(cleanedUniqueQueries, isPartial);
+		if (!query.isEmpty() && !resultsMap.containsKey(query.getKey())) {
+			List<InvertedIndex.FileResult> sortedResults = index.search(query.getStems(), isPartial, limit);
 
-			resultsMap.put(query, sortedResults);
+			resultsMap.put(query.getKey(), sortedResults);
 		}
 	}
 
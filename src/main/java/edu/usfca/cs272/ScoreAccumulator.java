@@ -0,0 +1,103 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Adds up the matches of a query one term at a time, keeping the count of each
+ * location in a primitive array indexed by location id instead of a map of result
+ * objects. The ids of matched locations are remembered in the order they are
+ * first matched, so only they are visited at the end, when a
+ * {@link InvertedIndex.FileResult} is made for each of them with its score
+ * computed once.
+ *
+ * Warning: This class is not thread-safe, each search should use its own
+ * accumulator.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class ScoreAccumulator {
+	/** The number of matches of each location, indexed by location id */
+	private final int[] counts;
+
+	/** The ids of the locations with any matches, in the order they were matched */
+	private final int[] matched;
+
+	/** The number of locations with any matches */
+	private int size;
+
+	/**
+	 * Initializes an accumulator for a dense location dictionary.
+	 *
+	 * @param numLocations the number of location ids, ids go from 0 up to this
+	 */
+	public ScoreAccumulator(int numLocations) {
+		this.counts = new int[numLocations];
+		this.matched = new int[numLocations];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds the matches of one posting.
+	 *
+	 * @param id the location id of the posting
+	 * @param count the number of positions in the posting, at least 1
+	 */
+	public void add(int id, int count) {
+		if (counts[id] == 0) {
+			matched[size++] = id;
+		}
+		counts[id] += count;
+	}
+
+	/**
+	 * Returns the number of locations with any matches.
+	 *
+	 * @return the number of results
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates a result for every matched location, in no particular order.
+	 *
+	 * @param locations looks up the path of a location id
+	 * @param totalWords looks up the total words of a location id
+	 * @return a new list of the results
+	 */
+	public List<InvertedIndex.FileResult> toResults(IntFunction<String> locations, IntToLongFunction totalWords) {
+		List<InvertedIndex.FileResult> resultList = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			int id = matched[i];
+			resultList.add(new InvertedIndex.FileResult(id, locations.apply(id), totalWords.applyAsLong(id), counts[id]));
+		}
+
+		return resultList;
+	}
+
+	/**
+	 * Returns the count of every matched location without making results, for
+	 * adding to the counts found in other indexes.
+	 *
+	 * @param locations looks up the path of a location id
+	 * @return a new map of location to count, in no particular order
+	 */
+	public Map<String, Integer> toCounts(IntFunction<String> locations) {
+		HashMap<String, Integer> countMap = new HashMap<>(size * 4 / 3 + 1);
+
+		for (int i = 0; i < size; i++) {
+			int id = matched[i];
+			countMap.put(locations.apply(id), counts[id]);
+		}
+
+		return countMap;
+	}
+}
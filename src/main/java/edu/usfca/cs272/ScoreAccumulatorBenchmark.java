@@ -0,0 +1,250 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures how many queries per second are added up by a {@link ScoreAccumulator}
+ * compared to the map of results the index used before, where every posting
+ * looked up its location in a {@link HashMap} and every added count recomputed
+ * the score. Sorting the results costs the same either way, so it is left out.
+ *
+ * The postings are made up, with a few common words found in most locations and
+ * many rare ones found in a few. Exact queries add up a few words, and partial
+ * queries add up many words like a short prefix matches.
+ *
+ * Usage: {@code ScoreAccumulatorBenchmark [locations] [queries]}
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class ScoreAccumulatorBenchmark {
+	/** The number of times each measurement is repeated, keeping the best */
+	private static final int ROUNDS = 5;
+
+	/** The number of different words with postings */
+	private static final int VOCABULARY = 5_000;
+
+	/** The number of words in each exact query */
+	private static final int EXACT_WORDS = 3;
+
+	/** The number of words each partial query matches */
+	private static final int PARTIAL_WORDS = 60;
+
+	/**
+	 * Runs the benchmark and prints a table of queries per second.
+	 *
+	 * @param args the number of locations and queries
+	 */
+	public static void main(String[] args) {
+		int locations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+		Random random = new Random(272);
+		Postings postings = new Postings(locations, random);
+
+		System.out.printf("%d locations, %d postings%n", locations, postings.size());
+		System.out.printf("%-8s %14s %18s%n", "query", "HashMap", "ScoreAccumulator");
+
+		for (int words : new int[] { EXACT_WORDS, PARTIAL_WORDS }) {
+			int[][] terms = new int[queries][words];
+			for (int[] query : terms) {
+				for (int i = 0; i < words; i++) {
+					query[i] = random.nextInt(VOCABULARY);
+				}
+			}
+
+			double map = measure(postings, terms, false);
+			double dense = measure(postings, terms, true);
+			System.out.printf("%-8s %14.0f %18.0f%n", words == EXACT_WORDS ? "exact" : "partial", map, dense);
+		}
+	}
+
+	/**
+	 * Measures the best rate of one way of adding up scores over a few rounds.
+	 *
+	 * @param postings the postings to search
+	 * @param queries the words of each query
+	 * @param dense whether to use a {@link ScoreAccumulator} instead of a map
+	 * @return the best number of queries per second
+	 */
+	public static double measure(Postings postings, int[][] queries, boolean dense) {
+		long best = Long.MAX_VALUE;
+		long matched = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+
+			for (int[] query : queries) {
+				matched += dense ? postings.accumulate(query) : postings.lookup(query);
+			}
+
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		if (matched < 0) {
+			throw new IllegalStateException();
+		}
+
+		return queries.length / (best / 1e9);
+	}
+
+	/**
+	 * Made up postings, the location ids and counts of each word.
+	 */
+	public static class Postings {
+		/** The location of each id */
+		private final String[] locations;
+
+		/** The total words of each location */
+		private final long[] totalWords;
+
+		/** The location ids of each word, in increasing order */
+		private final int[][] ids;
+
+		/** The number of positions of each posting of each word */
+		private final int[][] counts;
+
+		/**
+		 * Makes up the postings, where the k-th most common word is in about 1/k
+		 * of the locations.
+		 *
+		 * @param numLocations the number of locations
+		 * @param random the source of the postings
+		 */
+		public Postings(int numLocations, Random random) {
+			this.locations = new String[numLocations];
+			this.totalWords = new long[numLocations];
+			this.ids = new int[VOCABULARY][];
+			this.counts = new int[VOCABULARY][];
+
+			for (int id = 0; id < numLocations; id++) {
+				locations[id] = "location" + id + ".txt";
+				totalWords[id] = 100 + random.nextInt(10_000);
+			}
+
+			for (int word = 0; word < VOCABULARY; word++) {
+				double share = 1.0 / (word + 1);
+				int[] wordIds = new int[numLocations];
+				int size = 0;
+
+				for (int id = 0; id < numLocations; id++) {
+					if (random.nextDouble() < share) {
+						wordIds[size++] = id;
+					}
+				}
+
+				ids[word] = Arrays.copyOf(wordIds, size);
+				counts[word] = new int[size];
+				for (int i = 0; i < size; i++) {
+					counts[word][i] = 1 + random.nextInt(5);
+				}
+			}
+		}
+
+		/**
+		 * Returns the total number of postings.
+		 *
+		 * @return the number of postings
+		 */
+		public long size() {
+			long size = 0;
+			for (int[] wordIds : ids) {
+				size += wordIds.length;
+			}
+			return size;
+		}
+
+		/**
+		 * Adds up a query the way the index used to, with a map of results.
+		 *
+		 * @param query the words of the query
+		 * @return the number of locations matched
+		 */
+		public int lookup(int[] query) {
+			Map<Integer, Tally> lookup = new HashMap<>();
+			List<Tally> results = new ArrayList<>();
+
+			for (int word : query) {
+				for (int i = 0; i < ids[word].length; i++) {
+					int id = ids[word][i];
+					Tally tally = lookup.get(id);
+
+					if (tally == null) {
+						tally = new Tally(locations[id], totalWords[id]);
+						lookup.put(id, tally);
+						results.add(tally);
+					}
+
+					tally.increment(counts[word][i]);
+				}
+			}
+
+			return results.size();
+		}
+
+		/**
+		 * Adds up a query with a dense accumulator.
+		 *
+		 * @param query the words of the query
+		 * @return the number of locations matched
+		 */
+		public int accumulate(int[] query) {
+			ScoreAccumulator scores = new ScoreAccumulator(locations.length);
+
+			for (int word : query) {
+				for (int i = 0; i < ids[word].length; i++) {
+					scores.add(ids[word][i], counts[word][i]);
+				}
+			}
+
+			return scores.toResults(id -> locations[id], id -> totalWords[id]).size();
+		}
+	}
+
+	/**
+	 * The result object of the old search, which updated its score on every
+	 * added count.
+	 */
+	private static class Tally {
+		/** The location of the result */
+		private final String location;
+
+		/** The total words of the location */
+		private final long totalWords;
+
+		/** The number of matches so far */
+		private int count;
+
+		/** The score so far */
+		private double score;
+
+		/**
+		 * Initializes an empty result.
+		 *
+		 * @param location the location of the result
+		 * @param totalWords the total words of the location
+		 */
+		public Tally(String location, long totalWords) {
+			this.location = location;
+			this.totalWords = totalWords;
+		}
+
+		/**
+		 * Adds matches and recomputes the score.
+		 *
+		 * @param value the number of matches to add
+		 */
+		public void increment(int value) {
+			count += value;
+			if (totalWords != 0) {
+				score = (double) count / totalWords;
+			}
+		}
+	}
+}
@@ -0,0 +1,536 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * A thread-safe inverted index made of immutable segments, in the style of a
+ * log-structured merge tree. Every file that is added becomes its own small
+ * {@link FrozenInvertedIndex} segment, so adding never waits on a lock held by a
+ * search or by another writer for longer than it takes to append to a list.
+ *
+ * Segments are grouped into tiers by their number of postings, where each tier is
+ * mergeFactor times larger than the one before. Once a tier has mergeFactor
+ * segments that are not already being merged, they are merged into one segment of
+ * the next tier in the background on the work queue. The merged segment only
+ * replaces its inputs if none of them were removed in the meantime.
+ *
+ * Searches run over every current segment, and everything else reads from a
+ * snapshot that merges all the segments, which is kept until the segments change.
+ * A location must only ever be in one segment, so a location has to be removed
+ * before it can be added again.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class SegmentedInvertedIndex extends ThreadSafeInvertedIndex {
+	/** The default number of segments in a tier before they are merged */
+	public static final int DEFAULT_MERGE_FACTOR = 10;
+
+	/** The number of postings below which a segment is in the smallest tier */
+	private static final int BASE_POSTINGS = 1000;
+
+	/** The current segments, replaced as a whole and never modified once published */
+	private volatile List<FrozenInvertedIndex> segments;
+
+	/** The segments that are being merged right now */
+	private final Set<FrozenInvertedIndex> merging;
+
+	/** The number of segments in a tier before they are merged */
+	private final int mergeFactor;
+
+	/** The work queue to merge on, or null to merge on the calling thread */
+	private final WorkQueue workQueue;
+
+	/** Guards changes to the segments and the merging set */
+	private final Object segmentLock;
+
+	/** Guards the cached snapshot */
+	private final Object snapshotLock;
+
+	/** The merge of every segment, or null if it has not been made yet */
+	private FrozenInvertedIndex snapshot;
+
+	/** The segments the snapshot was made from */
+	private List<FrozenInvertedIndex> snapshotOf;
+
+	/**
+	 * Initializes an empty index that merges on the calling thread.
+	 */
+	public SegmentedInvertedIndex() {
+		this(null, DEFAULT_MERGE_FACTOR);
+	}
+
+	/**
+	 * Initializes an empty index.
+	 *
+	 * @param workQueue the work queue to merge segments on, or null to merge on the
+	 *   thread that added the last segment
+	 * @param mergeFactor the number of segments in a tier before they are merged,
+	 *   at least 2
+	 */
+	public SegmentedInvertedIndex(WorkQueue workQueue, int mergeFactor) {
+		super(false);
+
+		if (mergeFactor < 2) {
+			throw new IllegalArgumentException("The merge factor must be at least 2.");
+		}
+
+		this.segments = List.of();
+		this.merging = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.mergeFactor = mergeFactor;
+		this.workQueue = workQueue;
+		this.segmentLock = new Object();
+		this.snapshotLock = new Object();
+		this.snapshot = null;
+		this.snapshotOf = null;
+	}
+
+	/**
+	 * Returns the current segments.
+	 *
+	 * @return an unmodifiable list of the segments
+	 */
+	public List<FrozenInvertedIndex> getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Adds a segment to the index and starts any merges it makes possible.
+	 *
+	 * @param segment the segment to add, which must not share locations with the
+	 *   segments already in the index
+	 */
+	public void addSegment(FrozenInvertedIndex segment) {
+		List<MergeTask> tasks;
+
+		synchronized (segmentLock) {
+			List<FrozenInvertedIndex> updated = new ArrayList<>(segments);
+			updated.add(segment);
+			segments = Collections.unmodifiableList(updated);
+			tasks = findMerges();
+		}
+
+		startMerges(tasks);
+	}
+
+	/**
+	 * Finds the tier of a segment.
+	 *
+	 * @param segment the segment
+	 * @return the tier, where 0 is the smallest
+	 */
+	private int tier(FrozenInvertedIndex segment) {
+		long limit = (long) BASE_POSTINGS * mergeFactor;
+		int tier = 0;
+
+		while (segment.numPostings() >= limit) {
+			limit *= mergeFactor;
+			tier++;
+		}
+		return tier;
+	}
+
+	/**
+	 * Picks the segments to merge next and marks them as merging. Must be called
+	 * while holding the segment lock.
+	 *
+	 * @return the merges to start
+	 */
+	private List<MergeTask> findMerges() {
+		TreeMap<Integer, List<FrozenInvertedIndex>> tiers = new TreeMap<>();
+
+		for (FrozenInvertedIndex segment : segments) {
+			if (!merging.contains(segment)) {
+				tiers.computeIfAbsent(tier(segment), tier -> new ArrayList<>()).add(segment);
+			}
+		}
+
+		List<MergeTask> tasks = new ArrayList<>();
+
+		for (List<FrozenInvertedIndex> tier : tiers.values()) {
+			for (int start = 0; start + mergeFactor <= tier.size(); start += mergeFactor) {
+				List<FrozenInvertedIndex> picked = List.copyOf(tier.subList(start, start + mergeFactor));
+				merging.addAll(picked);
+				tasks.add(new MergeTask(picked));
+			}
+		}
+
+		return tasks;
+	}
+
+	/**
+	 * Starts merges on the work queue, or runs them now if there is no work queue.
+	 *
+	 * @param tasks the merges to start
+	 */
+	private void startMerges(List<MergeTask> tasks) {
+		for (MergeTask task : tasks) {
+			if (workQueue != null) {
+				workQueue.execute(task, WorkQueue.Priority.LOW);
+			} else {
+				task.run();
+			}
+		}
+	}
+
+	/**
+	 * Replaces merged segments with the result of the merge, unless one of them was
+	 * removed or replaced while the merge was running.
+	 *
+	 * @param picked the segments that were merged
+	 * @param merged the result of the merge, or null if the merge failed
+	 */
+	private void finishMerge(List<FrozenInvertedIndex> picked, FrozenInvertedIndex merged) {
+		List<MergeTask> tasks;
+
+		synchronized (segmentLock) {
+			merging.removeAll(picked);
+
+			Set<FrozenInvertedIndex> current = Collections.newSetFromMap(new IdentityHashMap<>());
+			current.addAll(segments);
+
+			if (merged != null && current.containsAll(picked)) {
+				List<FrozenInvertedIndex> updated = new ArrayList<>(segments.size() - picked.size() + 1);
+				current.removeAll(picked);
+
+				for (FrozenInvertedIndex segment : segments) {
+					if (current.contains(segment)) {
+						updated.add(segment);
+					}
+				}
+
+				updated.add(merged);
+				segments = Collections.unmodifiableList(updated);
+			}
+
+			tasks = findMerges();
+		}
+
+		startMerges(tasks);
+	}
+
+	/**
+	 * Merges every segment and caches the result until the segments change.
+	 *
+	 * @return a frozen index of all the segments
+	 */
+	private FrozenInvertedIndex snapshot() {
+		List<FrozenInvertedIndex> current = segments;
+
+		synchronized (snapshotLock) {
+			if (snapshotOf != current) {
+				snapshot = current.size() == 1 ? current.get(0) : FrozenInvertedIndex.merge(current, Set.of());
+				snapshotOf = current;
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Always fails, words have to be added a whole location at a time.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void add(String word, String location, int position) {
+		throw new UnsupportedOperationException("A segmented index only adds whole locations.");
+	}
+
+	/**
+	 * Always fails, words have to be added a whole location at a time.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addAll(List<String> words, String location, int position) {
+		throw new UnsupportedOperationException("A segmented index only adds whole locations.");
+	}
+
+	/**
+	 * Adds all the locations of another index as a new segment.
+	 *
+	 * @param index The other InvertedIndex, which must not share locations with this one.
+	 */
+	@Override
+	public void addDistinct(InvertedIndex index) {
+		FrozenInvertedIndex segment = index.freeze();
+
+		if (segment.numWords() > 0) {
+			addSegment(segment);
+		}
+	}
+
+	/**
+	 * Adds all the words of a single file as a new segment.
+	 *
+	 * @param file The words and positions of one file.
+	 */
+	@Override
+	public void addDistinct(FileIndexBuilder file) {
+		if (file.isEmpty()) {
+			return;
+		}
+
+		// Freezing the file does not need any lock
+		InvertedIndex single = new InvertedIndex();
+		single.addDistinct(file);
+		addSegment(single.freeze());
+	}
+
+	/**
+	 * Removes several locations and all of their words from the index. Segments
+	 * with any of those locations are replaced by copies without them.
+	 *
+	 * @param locations The file locations to remove.
+	 */
+	@Override
+	public void removeLocations(Collection<String> locations) {
+		Set<String> removed = new HashSet<>(locations);
+
+		if (removed.isEmpty()) {
+			return;
+		}
+
+		synchronized (segmentLock) {
+			List<FrozenInvertedIndex> updated = new ArrayList<>(segments.size());
+			boolean changed = false;
+
+			for (FrozenInvertedIndex segment : segments) {
+				if (removed.stream().noneMatch(segment::hasLocation)) {
+					updated.add(segment);
+					continue;
+				}
+
+				FrozenInvertedIndex rest = FrozenInvertedIndex.merge(List.of(segment), removed);
+				if (rest.numWords() > 0) {
+					updated.add(rest);
+				}
+				changed = true;
+			}
+
+			if (changed) {
+				segments = Collections.unmodifiableList(updated);
+			}
+		}
+	}
+
+	/**
+	 * Merges every segment into a single frozen index.
+	 *
+	 * @return A frozen copy of the index.
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		return snapshot();
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		for (FrozenInvertedIndex segment : segments) {
+			if (segment.hasWord(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasLocation(String word, String location) {
+		for (FrozenInvertedIndex segment : segments) {
+			if (segment.hasLocation(word, location)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasPosition(String word, String location, int position) {
+		for (FrozenInvertedIndex segment : segments) {
+			if (segment.hasPosition(word, location, position)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Set<String> getWords() {
+		return snapshot().getWords();
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		return snapshot().getLocations();
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		return snapshot().getLocations(word);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		return snapshot().getPositions(word, location);
+	}
+
+	@Override
+	public int numWords() {
+		return snapshot().numWords();
+	}
+
+	@Override
+	public int numLocations(String word) {
+		int count = 0;
+		for (FrozenInvertedIndex segment : segments) {
+			count += segment.numLocations(word);
+		}
+		return count;
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		int count = 0;
+		for (FrozenInvertedIndex segment : segments) {
+			count += segment.numPositions(word, location);
+		}
+		return count;
+	}
+
+	@Override
+	public long numWordsInLocation(String location) {
+		long count = 0;
+		for (FrozenInvertedIndex segment : segments) {
+			count += segment.numWordsInLocation(location);
+		}
+		return count;
+	}
+
+	@Override
+	public String getLocation(int id) {
+		return snapshot().getLocation(id);
+	}
+
+	@Override
+	public String toString() {
+		return "Segmented index of " + segments.size() + " segments";
+	}
+
+	@Override
+	public void writeIndex(Path indexPath) throws IOException {
+		snapshot().writeIndex(indexPath);
+	}
+
+	@Override
+	public void writeCounts(Path countsPath) throws IOException {
+		snapshot().writeCounts(countsPath);
+	}
+
+	/**
+	 * Searches every segment for exact matches. The location ids of the results
+	 * are only meaningful within the segment each result came from.
+	 *
+	 * @param cleanedUniqueQueries The set of cleaned query words.
+	 * @param limit The most results to return.
+	 * @return A sorted list of the search results.
+	 */
+	@Override
+	public List<FileResult> searchExact(Set<String> cleanedUniqueQueries, int limit) {
+		// A location is only in one segment, so the best overall are among the best of each
+		List<FileResult> resultList = new ArrayList<>();
+		for (FrozenInvertedIndex segment : segments) {
+			resultList.addAll(segment.searchExact(cleanedUniqueQueries, limit));
+		}
+		return rank(resultList, limit);
+	}
+
+	/**
+	 * Searches every segment for words starting with the query words. The location
+	 * ids of the results are only meaningful within the segment each result came
+	 * from.
+	 *
+	 * @param cleanedUniqueQueries The set of cleaned query words.
+	 * @param limit The most results to return.
+	 * @return A sorted list of the search results.
+	 */
+	@Override
+	public List<FileResult> searchPartial(Set<String> cleanedUniqueQueries, int limit) {
+		// A location is only in one segment, so the best overall are among the best of each
+		List<FileResult> resultList = new ArrayList<>();
+		for (FrozenInvertedIndex segment : segments) {
+			resultList.addAll(segment.searchPartial(cleanedUniqueQueries, limit));
+		}
+		return rank(resultList, limit);
+	}
+
+	/**
+	 * Counts the matches of every location in every segment.
+	 *
+	 * @param cleanedUniqueQueries The set of cleaned query words.
+	 * @param isPartial Whether to search for partial matches.
+	 * @return The number of matches of each location, in no particular order.
+	 */
+	@Override
+	public Map<String, Integer> searchCounts(Set<String> cleanedUniqueQueries, boolean isPartial) {
+		// A location is only in one segment, so the counts never overlap
+		Map<String, Integer> counts = new HashMap<>();
+		for (FrozenInvertedIndex segment : segments) {
+			counts.putAll(segment.searchCounts(cleanedUniqueQueries, isPartial));
+		}
+		return counts;
+	}
+
+	/**
+	 * Splits the words of the merged segments between several new indexes.
+	 *
+	 * @param parts The number of parts.
+	 * @param partOf Picks the part of a word, from 0 up to one less than parts.
+	 * @return The parts, each with the words picked for it.
+	 */
+	@Override
+	public InvertedIndex[] split(int parts, ToIntFunction<String> partOf) {
+		return snapshot().split(parts, partOf);
+	}
+
+	/**
+	 * Merges a group of segments from the same tier into one.
+	 */
+	private class MergeTask implements Runnable {
+		/** The segments to merge */
+		private final List<FrozenInvertedIndex> picked;
+
+		/**
+		 * Initializes a merge of the given segments.
+		 *
+		 * @param picked the segments to merge, already marked as merging
+		 */
+		public MergeTask(List<FrozenInvertedIndex> picked) {
+			this.picked = picked;
+		}
+
+		@Override
+		public void run() {
+			FrozenInvertedIndex merged = null;
+
+			try {
+				merged = FrozenInvertedIndex.merge(picked, Set.of());
+			} finally {
+				// always clear the merging marks, even if the merge failed
+				finishMerge(picked, merged);
+			}
+		}
+	}
+}
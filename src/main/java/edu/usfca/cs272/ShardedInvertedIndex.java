@@ -0,0 +1,604 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * A thread-safe inverted index split into shards by the hash of each word. Every
+ * shard is its own {@link ThreadSafeInvertedIndex} with its own lock, so writers
+ * adding different words do not wait on each other, and a query can search its
+ * shards in parallel on the work queue before the counts are combined into the
+ * final scores.
+ *
+ * Every word lives in exactly one shard, but a location is spread over many, so
+ * the total words of a location is the sum over all the shards. Those sums are
+ * kept in an immutable table together with the location ids, made again only
+ * after the index changes, so searches look them up without any lock. The
+ * shards only count the matches of each location and leave the scoring and
+ * sorting to the combined results.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class ShardedInvertedIndex extends ThreadSafeInvertedIndex {
+	/** The shards, word : shard at the word hash modulo the number of shards */
+	private final ThreadSafeInvertedIndex[] shards;
+
+	/** The work queue to search shards on, or null to search on the calling thread */
+	private final WorkQueue workQueue;
+
+	/** The location dictionary shared by all the shards for the result ids */
+	private final ArrayList<String> locations;
+
+	/** Reverse lookup of the location dictionary, path : location id */
+	private final HashMap<String, Integer> locationIds;
+
+	/** Counts the changes to the index, so a stale location table is made again */
+	private final AtomicLong version;
+
+	/** The location table of the last version searched, or null */
+	private volatile LocationTable table;
+
+	/**
+	 * Initializes an empty index.
+	 *
+	 * @param workQueue the work queue to search shards on, or null to search them
+	 *   one after another on the calling thread
+	 * @param numShards the number of shards, at least 1
+	 * @param packed whether to delta and varint pack the position lists
+	 */
+	public ShardedInvertedIndex(WorkQueue workQueue, int numShards, boolean packed) {
+		// every word and location is kept in the shards instead
+		super(packed, false);
+
+		if (numShards < 1) {
+			throw new IllegalArgumentException("There must be at least one shard.");
+		}
+
+		this.shards = new ThreadSafeInvertedIndex[numShards];
+		for (int i = 0; i < numShards; i++) {
+			shards[i] = new ThreadSafeInvertedIndex(packed);
+		}
+
+		this.workQueue = workQueue;
+		this.locations = new ArrayList<>();
+		this.locationIds = new HashMap<>();
+		this.version = new AtomicLong();
+		this.table = null;
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return the number of shards
+	 */
+	public int numShards() {
+		return shards.length;
+	}
+
+	/**
+	 * Finds the shard a word belongs to.
+	 *
+	 * @param word the word
+	 * @return the index of its shard
+	 */
+	private int shardOf(String word) {
+		return Math.floorMod(word.hashCode(), shards.length);
+	}
+
+	/**
+	 * Looks up the id of a location, adding it to the location dictionary if it
+	 * has not been seen before.
+	 *
+	 * @param location The file location.
+	 * @return The location id.
+	 */
+	private int addLocation(String location) {
+		synchronized (locationIds) {
+			Integer id = locationIds.get(location);
+
+			if (id == null) {
+				id = locations.size();
+				locations.add(location);
+				locationIds.put(location, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Returns the location table of the current version of the index, making it
+	 * again if the index changed since the last one.
+	 *
+	 * @return the location table
+	 */
+	private LocationTable table() {
+		long current = version.get();
+		LocationTable latest = table;
+
+		if (latest != null && latest.version == current) {
+			return latest;
+		}
+
+		synchronized (version) {
+			latest = table;
+
+			if (latest == null || latest.version != current) {
+				latest = new LocationTable(current);
+				table = latest;
+			}
+			return latest;
+		}
+	}
+
+	/**
+	 * Marks the index as changed, after the change is done.
+	 */
+	private void changed() {
+		version.incrementAndGet();
+	}
+
+	@Override
+	public void add(String word, String location, int position) {
+		addLocation(location);
+		shards[shardOf(word)].add(word, location, position);
+		changed();
+	}
+
+	@Override
+	public void addAll(List<String> words, String location, int position) {
+		for (String word : words) {
+			add(word, location, position++);
+		}
+	}
+
+	/**
+	 * Adds all the locations of another index, splitting its words by shard and
+	 * merging each part straight into its shard.
+	 *
+	 * @param index The other InvertedIndex, which must not share locations with this
+	 *   one and should not be changed afterwards.
+	 */
+	@Override
+	public void addDistinct(InvertedIndex index) {
+		InvertedIndex[] parts = index.split(shards.length, this::shardOf);
+
+		// a part only has the locations with words in its shard, so all of them come from the whole index
+		for (String location : index.getLocations()) {
+			addLocation(location);
+		}
+
+		for (int shard = 0; shard < shards.length; shard++) {
+			shards[shard].addDistinct(parts[shard]);
+		}
+
+		changed();
+	}
+
+	/**
+	 * Splits the words of a single file by shard and adds each part to its shard.
+	 *
+	 * @param file The words and positions of one file.
+	 */
+	@Override
+	public void addDistinct(FileIndexBuilder file) {
+		if (file.isEmpty()) {
+			return;
+		}
+
+		addLocation(file.getLocation());
+
+		FileIndexBuilder[] parts = new FileIndexBuilder[shards.length];
+		for (var entry : file.getWords().entrySet()) {
+			int shard = shardOf(entry.getKey());
+
+			if (parts[shard] == null) {
+				parts[shard] = new FileIndexBuilder(file.getLocation());
+			}
+			parts[shard].add(entry.getKey(), entry.getValue());
+		}
+
+		for (int shard = 0; shard < shards.length; shard++) {
+			if (parts[shard] != null) {
+				shards[shard].addDistinct(parts[shard]);
+			}
+		}
+
+		changed();
+	}
+
+	@Override
+	public void removeLocation(String location) {
+		removeLocations(List.of(location));
+	}
+
+	@Override
+	public void removeLocations(Collection<String> locations) {
+		for (ThreadSafeInvertedIndex shard : shards) {
+			shard.removeLocations(locations);
+		}
+
+		changed();
+	}
+
+	/**
+	 * Splits the words of the merged shards between several new indexes.
+	 *
+	 * @param parts The number of parts.
+	 * @param partOf Picks the part of a word, from 0 up to one less than parts.
+	 * @return The parts, each with the words picked for it.
+	 */
+	@Override
+	public InvertedIndex[] split(int parts, ToIntFunction<String> partOf) {
+		return freeze().split(parts, partOf);
+	}
+
+	/**
+	 * Merges every shard into a single frozen index. The shards do not share any
+	 * words, so the merge only has to interleave them.
+	 *
+	 * @return A frozen copy of the index.
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		List<FrozenInvertedIndex> frozen = new ArrayList<>(shards.length);
+		for (ThreadSafeInvertedIndex shard : shards) {
+			frozen.add(shard.freeze());
+		}
+		return FrozenInvertedIndex.merge(frozen, Set.of());
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		return shards[shardOf(word)].hasWord(word);
+	}
+
+	@Override
+	public boolean hasLocation(String word, String location) {
+		return shards[shardOf(word)].hasLocation(word, location);
+	}
+
+	@Override
+	public boolean hasPosition(String word, String location, int position) {
+		return shards[shardOf(word)].hasPosition(word, location, position);
+	}
+
+	@Override
+	public Set<String> getWords() {
+		TreeSet<String> words = new TreeSet<>();
+		for (ThreadSafeInvertedIndex shard : shards) {
+			words.addAll(shard.getWords());
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		LocationTable current = table();
+		TreeSet<String> paths = new TreeSet<>();
+
+		for (int id = 0; id < current.locations.length; id++) {
+			if (current.wordCounts[id] > 0) {
+				paths.add(current.locations[id]);
+			}
+		}
+		return Collections.unmodifiableSet(paths);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		return shards[shardOf(word)].getLocations(word);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		return shards[shardOf(word)].getPositions(word, location);
+	}
+
+	@Override
+	public int numWords() {
+		int count = 0;
+		for (ThreadSafeInvertedIndex shard : shards) {
+			count += shard.numWords();
+		}
+		return count;
+	}
+
+	@Override
+	public int numLocations(String word) {
+		return shards[shardOf(word)].numLocations(word);
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		return shards[shardOf(word)].numPositions(word, location);
+	}
+
+	@Override
+	public long numWordsInLocation(String location) {
+		LocationTable current = table();
+		int id = current.idOf(location);
+		return id >= 0 ? current.wordCounts[id] : 0;
+	}
+
+	@Override
+	public String getLocation(int id) {
+		return table().locations[id];
+	}
+
+	@Override
+	public String toString() {
+		return "Sharded index of " + numWords() + " words in " + shards.length + " shards";
+	}
+
+	@Override
+	public void writeIndex(Path indexPath) throws IOException {
+		freeze().writeIndex(indexPath);
+	}
+
+	@Override
+	public void writeCounts(Path countsPath) throws IOException {
+		freeze().writeCounts(countsPath);
+	}
+
+	/**
+	 * Adds up the counts of every shard, one after another on the calling thread.
+	 *
+	 * @param cleanedUniqueQueries The set of cleaned query words.
+	 * @param isPartial Whether to search for partial matches.
+	 * @return The number of matches of each location, in no particular order.
+	 */
+	@Override
+	public Map<String, Integer> searchCounts(Set<String> cleanedUniqueQueries, boolean isPartial) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (ThreadSafeInvertedIndex shard : shards) {
+			shard.searchCounts(cleanedUniqueQueries, isPartial).forEach((location, count) -> counts.merge(location, count, Integer::sum));
+		}
+		return counts;
+	}
+
+	/**
+	 * Searches only the shards of the query words, in parallel when there is a
+	 * work queue.
+	 *
+	 * @param cleanedUniqueQueries The set of cleaned query words.
+	 * @param limit The most results to return.
+	 * @return A sorted list of the search results.
+	 */
+	@Override
+	public List<FileResult> searchExact(Set<String> cleanedUniqueQueries, int limit) {
+		List<Set<String>> queries = new ArrayList<>(Collections.nCopies(shards.length, Set.of()));
+
+		for (String word : cleanedUniqueQueries) {
+			int shard = shardOf(word);
+
+			if (queries.get(shard).isEmpty()) {
+				queries.set(shard, new TreeSet<>());
+			}
+			queries.get(shard).add(word);
+		}
+
+		return searchShards(queries, false, limit);
+	}
+
+	/**
+	 * Searches every shard, in parallel when there is a work queue, since words
+	 * with the same prefix can be in any shard.
+	 *
+	 * @param cleanedUniqueQueries The set of cleaned query words.
+	 * @param limit The most results to return.
+	 * @return A sorted list of the search results.
+	 */
+	@Override
+	public List<FileResult> searchPartial(Set<String> cleanedUniqueQueries, int limit) {
+		return searchShards(Collections.nCopies(shards.length, cleanedUniqueQueries), true, limit);
+	}
+
+	/**
+	 * Searches the shards and combines their counts into scores using the total
+	 * words of each location over all the shards. The shards return their counts
+	 * unsorted, and the location ids and totals come from the location table, so
+	 * combining them takes no lock and only the combined results are ranked.
+	 *
+	 * The calling thread may itself be a worker of the work queue, so it runs every
+	 * shard search that no worker has started yet instead of only waiting. It then
+	 * only waits on searches that are already running, which always finish.
+	 *
+	 * @param queries the query words of each shard, where a shard without any is skipped
+	 * @param isPartial whether to search for partial matches
+	 * @param limit the most results to return
+	 * @return A sorted list of the search results.
+	 */
+	private List<FileResult> searchShards(List<Set<String>> queries, boolean isPartial, int limit) {
+		LocationTable current = table();
+		List<ShardSearch> searches = new ArrayList<>();
+
+		for (int shard = 0; shard < shards.length; shard++) {
+			if (!queries.get(shard).isEmpty()) {
+				searches.add(new ShardSearch(shards[shard], queries.get(shard), isPartial));
+			}
+		}
+
+		if (workQueue != null) {
+			// the first search is always run here
+			for (int i = 1; i < searches.size(); i++) {
+				workQueue.execute(searches.get(i), WorkQueue.Priority.HIGH);
+			}
+		}
+
+		for (ShardSearch search : searches) {
+			search.run();
+		}
+
+		ScoreAccumulator scores = new ScoreAccumulator(current.locations.length);
+
+		for (ShardSearch search : searches) {
+			for (var entry : search.await().entrySet()) {
+				int id = current.idOf(entry.getKey());
+
+				// a location added after the table was made is not searched yet
+				if (id >= 0) {
+					scores.add(id, entry.getValue());
+				}
+			}
+		}
+
+		// Every shard has to return all of its counts, since a location's score needs all of them
+		return rank(scores.toResults(id -> current.locations[id], id -> current.wordCounts[id]), limit);
+	}
+
+	/**
+	 * An immutable copy of the location dictionary with the total words of every
+	 * location over all the shards, as of one version of the index.
+	 */
+	private class LocationTable {
+		/** The version of the index this table was made from */
+		private final long version;
+
+		/** The paths of the locations, indexed by location id */
+		private final String[] locations;
+
+		/** The total words of each location over all the shards, indexed by location id */
+		private final long[] wordCounts;
+
+		/** Reverse lookup of the locations, path : location id */
+		private final Map<String, Integer> ids;
+
+		/**
+		 * Makes the table of the current state of the index.
+		 *
+		 * @param version the version of the index, read before anything else
+		 */
+		public LocationTable(long version) {
+			this.version = version;
+
+			synchronized (locationIds) {
+				this.locations = ShardedInvertedIndex.this.locations.toArray(new String[0]);
+				this.ids = new HashMap<>(locationIds);
+			}
+
+			this.wordCounts = new long[locations.length];
+			for (ThreadSafeInvertedIndex shard : shards) {
+				for (int id = 0; id < locations.length; id++) {
+					wordCounts[id] += shard.numWordsInLocation(locations[id]);
+				}
+			}
+		}
+
+		/**
+		 * Looks up the id of a location.
+		 *
+		 * @param location the path of the location
+		 * @return the location id, or -1 if the location is not in the table
+		 */
+		public int idOf(String location) {
+			Integer id = ids.get(location);
+			return id == null ? -1 : id;
+		}
+	}
+
+	/**
+	 * Searches a single shard, either on a worker or on the thread that is waiting
+	 * for it, whichever claims it first.
+	 */
+	private static class ShardSearch implements Runnable {
+		/** The shard to search */
+		private final ThreadSafeInvertedIndex shard;
+
+		/** The query words in this shard */
+		private final Set<String> queries;
+
+		/** Whether to search for partial matches */
+		private final boolean isPartial;
+
+		/** Set by the first thread to run the search */
+		private final AtomicBoolean claimed;
+
+		/** Whether the search has finished, guarded by this object */
+		private boolean done;
+
+		/** The number of matches of each location in the shard */
+		private Map<String, Integer> results;
+
+		/** The exception thrown by the search, if any */
+		private RuntimeException failure;
+
+		/**
+		 * Initializes a search of one shard.
+		 *
+		 * @param shard the shard to search
+		 * @param queries the query words in this shard
+		 * @param isPartial whether to search for partial matches
+		 */
+		public ShardSearch(ThreadSafeInvertedIndex shard, Set<String> queries, boolean isPartial) {
+			this.shard = shard;
+			this.queries = queries;
+			this.isPartial = isPartial;
+			this.claimed = new AtomicBoolean(false);
+			this.done = false;
+		}
+
+		@Override
+		public void run() {
+			if (!claimed.compareAndSet(false, true)) {
+				return;
+			}
+
+			Map<String, Integer> found = null;
+			RuntimeException thrown = null;
+
+			try {
+				found = shard.searchCounts(queries, isPartial);
+			} catch (RuntimeException e) {
+				thrown = e;
+			}
+
+			synchronized (this) {
+				results = found;
+				failure = thrown;
+				done = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Waits for the search to finish. It must already have been claimed.
+		 *
+		 * @return the number of matches of each location in the shard
+		 * @throws RuntimeException if the search failed
+		 */
+		public synchronized Map<String, Integer> await() {
+			boolean interrupted = false;
+
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// the search is already running, so keep waiting for it
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+			return results;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package edu.usfca.cs272;
+
+import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * A bounded cache of word to stem results that any number of threads can share.
+ * Natural text repeats the same words over and over, so most words are stemmed
+ * only once and every other time is a lookup.
+ *
+ * The cache is split into stripes by the hash of the word, each with its own
+ * lock, so threads looking up different words rarely wait on each other. Every
+ * stripe holds at most its share of the size limit and evicts its least
+ * recently used word when it is full. Misses are stemmed outside of any lock by
+ * a stemmer that belongs to the calling thread, since the snowball stemmers are
+ * not thread-safe.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class StemCache implements Stemmer {
+	/** The default most words to keep */
+	public static final int DEFAULT_SIZE = 100_000;
+
+	/** The cache shared by the indexing and query workers */
+	public static final StemCache SHARED = new StemCache(DEFAULT_SIZE);
+
+	/** The number of stripes, a power of two */
+	private static final int STRIPES = 16;
+
+	/** The stripes, word : stripe at the word hash modulo the number of stripes */
+	private final Stripe[] stripes;
+
+	/** The stemmer of each thread, used on a miss */
+	private final ThreadLocal<Stemmer> stemmers;
+
+	/** The number of words found in the cache */
+	private final LongAdder hits;
+
+	/** The number of words that had to be stemmed */
+	private final LongAdder misses;
+
+	/** The number of words evicted to stay under the size limit */
+	private final LongAdder evictions;
+
+	/**
+	 * Initializes an empty cache of English stems.
+	 *
+	 * @param maxSize the most words to keep, at least 1
+	 */
+	public StemCache(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The cache must hold at least one word.");
+		}
+
+		this.stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			// spread the limit so the stripes add up to it
+			stripes[i] = new Stripe(Math.max(1, maxSize / STRIPES + (i < maxSize % STRIPES ? 1 : 0)));
+		}
+
+		this.stemmers = ThreadLocal.withInitial(() -> new SnowballStemmer(ENGLISH));
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	/**
+	 * Returns the stem of a word, stemming and caching it if it is not cached yet.
+	 *
+	 * @param word the cleaned word to stem
+	 * @return the stem of the word, always a {@link String}
+	 */
+	@Override
+	public CharSequence stem(CharSequence word) {
+		String key = word.toString();
+		Stripe stripe = stripes[(key.hashCode() ^ (key.hashCode() >>> 16)) & (STRIPES - 1)];
+
+		String stem;
+		synchronized (stripe) {
+			stem = stripe.get(key);
+		}
+
+		if (stem != null) {
+			hits.increment();
+			return stem;
+		}
+
+		misses.increment();
+		stem = stemmers.get().stem(key).toString();
+
+		synchronized (stripe) {
+			// another thread may have stemmed the same word meanwhile, which is harmless
+			stripe.put(key, stem);
+		}
+		return stem;
+	}
+
+	/**
+	 * Returns the number of words found in the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of words that were not cached and had to be stemmed.
+	 *
+	 * @return the number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of words evicted to stay under the size limit.
+	 *
+	 * @return the number of evictions
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the number of words currently cached.
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Removes every cached word and resets the counters.
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	@Override
+	public String toString() {
+		long hitCount = hits();
+		long total = hitCount + misses();
+		double rate = total == 0 ? 0 : 100.0 * hitCount / total;
+		return String.format("%d words, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+				size(), hitCount, total - hitCount, rate, evictions());
+	}
+
+	/**
+	 * One stripe of the cache, a map in least recently used order that evicts its
+	 * eldest word when it grows past its limit. Guarded by itself.
+	 */
+	private class Stripe extends LinkedHashMap<String, String> {
+		/** Unused, the cache is never serialized */
+		private static final long serialVersionUID = 1L;
+
+		/** The most words this stripe keeps */
+		private final int maxSize;
+
+		/**
+		 * Initializes an empty stripe.
+		 *
+		 * @param maxSize the most words to keep
+		 */
+		public Stripe(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			if (size() > maxSize) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
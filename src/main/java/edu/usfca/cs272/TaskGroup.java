@@ -0,0 +1,241 @@
+package edu.usfca.cs272;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.usfca.cs272.WorkQueue.Priority;
+
+/**
+ * A group of tasks that run on the workers of a shared {@link WorkQueue} but
+ * are tracked on their own. Finishing a group only waits for its own tasks, so
+ * several jobs, such as indexing a corpus, searching and writing output, can be
+ * submitted to the same workers at once and each waited on when it is needed.
+ * A group also keeps the exceptions its tasks threw and can be cancelled without
+ * affecting any other group.
+ *
+ * A group only wraps the shared queue, so it has no workers, capacity or
+ * statistics of its own; those stay on the queue. Both can be handed to anything
+ * that takes a {@link TaskInterface}. Tasks submitted to the group by its own
+ * tasks belong to the group too.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class TaskGroup implements TaskInterface {
+	/** The queue whose workers run the tasks */
+	private final WorkQueue queue;
+
+	/** The lock guarding the counts and failures */
+	private final Object lock;
+
+	/** The number of tasks submitted but not finished or skipped yet */
+	private int pending;
+
+	/** The number of tasks that ran without an exception */
+	private int completed;
+
+	/** The number of tasks skipped because the group was cancelled or they waited too long */
+	private int skipped;
+
+	/** The number of tasks the shared queue would not take, which never ran */
+	private int rejected;
+
+	/** The exceptions thrown by the tasks, in the order they were thrown */
+	private final List<RuntimeException> failures;
+
+	/** Whether tasks that have not started yet should be skipped */
+	private volatile boolean cancelled;
+
+	/**
+	 * Starts an empty group of tasks on a work queue.
+	 *
+	 * @param queue the queue whose workers run the tasks
+	 * @see WorkQueue#group()
+	 */
+	public TaskGroup(WorkQueue queue) {
+		this.queue = queue;
+		this.lock = new Object();
+		this.pending = 0;
+		this.completed = 0;
+		this.skipped = 0;
+		this.rejected = 0;
+		this.failures = new ArrayList<>();
+		this.cancelled = false;
+	}
+
+	/**
+	 * Adds a task of the group to the shared queue. A task that waits past its
+	 * deadline is skipped by the group, so it still counts as done. A task the
+	 * queue rejects is counted as rejected and the exception is passed on.
+	 *
+	 * @param task the task to run
+	 * @param priority how urgent the task is
+	 * @param maxWait the longest the task may wait before it is skipped, or null
+	 */
+	@Override
+	public void execute(Runnable task, Priority priority, Duration maxWait) {
+		long submitted = System.nanoTime();
+		long limit = maxWait == null ? Long.MAX_VALUE : maxWait.toNanos();
+
+		synchronized (lock) {
+			pending++;
+		}
+
+		try {
+			queue.execute(() -> run(task, System.nanoTime() - submitted > limit), priority);
+		} catch (RuntimeException e) {
+			// a full queue may reject the task, which then never runs
+			synchronized (lock) {
+				rejected++;
+				done();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs one task of the group, unless the group was cancelled first.
+	 *
+	 * @param task the task to run
+	 * @param expired whether the task waited past its deadline
+	 */
+	private void run(Runnable task, boolean expired) {
+		if (cancelled || expired) {
+			finished(null, true);
+			return;
+		}
+
+		RuntimeException failure = null;
+
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			failure = e;
+
+			// still thrown so the worker reports it like any other task
+			throw e;
+		} finally {
+			finished(failure, false);
+		}
+	}
+
+	/**
+	 * Counts a task as done.
+	 *
+	 * @param failure what the task threw, or null
+	 * @param skip whether the task was skipped instead of run
+	 */
+	private void finished(RuntimeException failure, boolean skip) {
+		synchronized (lock) {
+			if (skip) {
+				skipped++;
+			} else if (failure != null) {
+				failures.add(failure);
+			} else {
+				completed++;
+			}
+
+			done();
+		}
+	}
+
+	/**
+	 * Takes a task off the pending count, waking up anyone waiting on the last
+	 * one. The lock must be held.
+	 */
+	private void done() {
+		pending--;
+		if (pending <= 0) {
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits for every task of the group to finish or be skipped. Tasks of other
+	 * groups on the same queue are not waited for. This should not be called from
+	 * a task of the same queue, which would hold up one of the workers it waits on.
+	 *
+	 * @throws InterruptedException if interrupted while tasks are still pending
+	 */
+	@Override
+	public void finish() throws InterruptedException {
+		synchronized (lock) {
+			while (pending > 0) {
+				lock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Cancels the group, so its tasks that have not started yet are skipped and
+	 * any submitted later are skipped too. Tasks already running are not
+	 * interrupted.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks if the group was cancelled.
+	 *
+	 * @return true if the group was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Checks if every task submitted so far has finished or been skipped.
+	 *
+	 * @return true if no task of the group is pending
+	 */
+	public boolean isDone() {
+		synchronized (lock) {
+			return pending <= 0;
+		}
+	}
+
+	/**
+	 * Checks if any task of the group threw an exception.
+	 *
+	 * @return true if a task failed
+	 */
+	public boolean isFailed() {
+		synchronized (lock) {
+			return !failures.isEmpty();
+		}
+	}
+
+	/**
+	 * Returns the exceptions thrown by the tasks so far.
+	 *
+	 * @return an unmodifiable copy of the exceptions, in the order thrown
+	 */
+	public List<RuntimeException> getFailures() {
+		synchronized (lock) {
+			return Collections.unmodifiableList(new ArrayList<>(failures));
+		}
+	}
+
+	/**
+	 * Returns the number of tasks of the group that have not finished yet.
+	 *
+	 * @return the number of pending tasks
+	 */
+	public int pending() {
+		synchronized (lock) {
+			return pending;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (lock) {
+			return String.format("%d pending, %d completed, %d failed, %d skipped, %d rejected%s",
+					pending, completed, failures.size(), skipped, rejected, cancelled ? " (cancelled)" : "");
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package edu.usfca.cs272;
+
+import java.time.Duration;
+
+/**
+ * Something tasks can be handed to and then waited on, either a whole
+ * {@link WorkQueue} or a {@link TaskGroup} sharing the workers of one.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public interface TaskInterface {
+	/**
+	 * Adds a task to run with normal priority.
+	 *
+	 * @param task the task to run
+	 */
+	public default void execute(Runnable task) {
+		execute(task, WorkQueue.Priority.NORMAL, null);
+	}
+
+	/**
+	 * Adds a task to run with a priority.
+	 *
+	 * @param task the task to run
+	 * @param priority how urgent the task is
+	 */
+	public default void execute(Runnable task, WorkQueue.Priority priority) {
+		execute(task, priority, null);
+	}
+
+	/**
+	 * Adds a task to run with a priority, to be dropped if no worker gets to it in
+	 * time.
+	 *
+	 * @param task the task to run
+	 * @param priority how urgent the task is
+	 * @param maxWait the longest the task may wait before it is dropped, or null
+	 *   to wait as long as it takes
+	 */
+	void execute(Runnable task, WorkQueue.Priority priority, Duration maxWait);
+
+	/**
+	 * Waits for every task added so far to finish. This should not be called from
+	 * one of the tasks, which would hold up a worker it waits on.
+	 *
+	 * @throws InterruptedException if interrupted before every task finished, in
+	 *   which case some may still be running
+	 */
+	void finish() throws InterruptedException;
+}
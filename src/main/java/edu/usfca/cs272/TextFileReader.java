@@ -0,0 +1,293 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of UTF-8 text files in large chunks through a
+ * {@link FileChannel} instead of one {@link String} per line. Files are either
+ * bulk read into a reusable byte buffer or, when they are large, mapped into
+ * memory, and then decoded into a reusable char buffer. Each line is handed over
+ * as a range of that buffer, so nothing is allocated per line.
+ *
+ * The lines are exactly the ones {@link java.io.BufferedReader#readLine()} would
+ * return, ended by a line feed, a carriage return, or both, and malformed input
+ * is reported the same way as {@link java.nio.file.Files#newBufferedReader(Path)}
+ * reports it.
+ *
+ * Warning: This class is not thread-safe, each thread should use its own reader.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class TextFileReader {
+	/** The size of the chunks files are read in */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	/** Files at least this big are mapped into memory instead of read in chunks */
+	public static final long MAP_THRESHOLD = 1 << 22;
+
+	/**
+	 * Receives the lines of a file.
+	 */
+	@FunctionalInterface
+	public interface LineAction {
+		/**
+		 * Handles one line. The chars are only valid until this returns.
+		 *
+		 * @param chars the chars containing the line
+		 * @param start the offset of the first char of the line
+		 * @param end the offset just past the last char, not counting the line terminator
+		 */
+		void accept(char[] chars, int start, int end);
+	}
+
+	/** The decoder, which reports bad input like the buffered reader does */
+	private final CharsetDecoder decoder;
+
+	/** The reusable buffer for reading bytes in chunks */
+	private final ByteBuffer bytes;
+
+	/** The decoded chars, grown when a line does not fit */
+	private char[] array;
+
+	/** The buffer the decoder writes into the array through */
+	private CharBuffer chars;
+
+	/**
+	 * Initializes a reader with empty buffers.
+	 */
+	public TextFileReader() {
+		this.decoder = UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		this.bytes = ByteBuffer.allocate(CHUNK_SIZE);
+		setArray(new char[CHUNK_SIZE]);
+	}
+
+	/**
+	 * Switches to a new char array.
+	 *
+	 * @param array the array to decode into
+	 */
+	private void setArray(char[] array) {
+		this.array = array;
+		this.chars = CharBuffer.wrap(array);
+	}
+
+	/**
+	 * Reads a file and passes each of its lines to an action, in order.
+	 *
+	 * @param path the file to read
+	 * @param action what to do with each line
+	 * @throws IOException if the file cannot be read or is not valid UTF-8
+	 */
+	public void forEachLine(Path path, LineAction action) throws IOException {
+		forEachLine(path, 0, Long.MAX_VALUE, action);
+	}
+
+	/**
+	 * Reads part of a file and passes each of its lines to an action, in order. The
+	 * part should start at the beginning of the file or right after a line feed,
+	 * such as a part found by {@link #splitLines(Path, int)}, so it starts at the
+	 * beginning of a line and a character.
+	 *
+	 * @param path the file to read
+	 * @param start the offset of the first byte to read
+	 * @param end the offset just past the last byte to read, which may be past the
+	 *   end of the file
+	 * @param action what to do with each line
+	 * @throws IOException if the file cannot be read or is not valid UTF-8
+	 */
+	public void forEachLine(Path path, long start, long end, LineAction action) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			end = Math.min(end, channel.size());
+			long length = Math.max(0, end - start);
+			boolean mapped = length >= MAP_THRESHOLD && length <= Integer.MAX_VALUE;
+
+			ByteBuffer input;
+			if (mapped) {
+				input = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			} else {
+				input = bytes;
+				input.clear();
+			}
+
+			decoder.reset();
+
+			// a mapped file is all input from the start
+			boolean eof = mapped;
+			long position = start;
+			int count = 0;
+
+			while (true) {
+				if (!eof) {
+					long left = end - position;
+
+					if (left <= 0) {
+						eof = true;
+					} else {
+						input.limit(input.position() + (int) Math.min(input.remaining(), left));
+						int read = channel.read(input, position);
+
+						if (read < 0) {
+							eof = true;
+						} else {
+							position += read;
+						}
+					}
+					input.flip();
+				}
+
+				chars.limit(array.length).position(count);
+				CoderResult result = decoder.decode(input, chars, eof);
+				if (result.isError()) {
+					result.throwException();
+				}
+
+				boolean done = eof && result.isUnderflow();
+				if (done) {
+					result = decoder.flush(chars);
+					done = result.isUnderflow();
+				}
+
+				count = chars.position();
+				int lineStart = forEachLine(count, action);
+
+				if (done) {
+					// the last line does not need a terminator
+					if (lineStart < count) {
+						action.accept(array, lineStart, count);
+					}
+					return;
+				}
+
+				// keep the unfinished line for the next chunk
+				System.arraycopy(array, lineStart, array, 0, count - lineStart);
+				count -= lineStart;
+
+				if (count == array.length) {
+					char[] grown = new char[array.length * 2];
+					System.arraycopy(array, 0, grown, 0, count);
+					setArray(grown);
+				}
+
+				if (!eof) {
+					input.compact();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits a file into about equal parts that each start at the beginning of a
+	 * line, so the parts can be read at the same time and give the same lines as
+	 * reading the whole file. A part ends right after a line feed, and a line feed
+	 * byte is never part of a multi-byte character. A file with few line feeds may
+	 * have fewer parts than asked for.
+	 *
+	 * @param path the file to split
+	 * @param parts the number of parts to aim for
+	 * @return the offsets where the parts start followed by the size of the file,
+	 *   so part i is from offset i up to offset i + 1
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long[] splitLines(Path path, int parts) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long[] offsets = new long[Math.max(1, parts) + 1];
+			ByteBuffer probe = ByteBuffer.allocate(1 << 12);
+
+			int found = 1;
+			long last = 0;
+
+			for (int i = 1; i < parts; i++) {
+				long target = Math.max(last, size / parts * i);
+				long start = nextLine(channel, target, probe);
+
+				if (start >= size) {
+					break;
+				}
+
+				if (start > last) {
+					offsets[found++] = start;
+					last = start;
+				}
+			}
+
+			offsets[found] = size;
+			return Arrays.copyOf(offsets, found + 1);
+		}
+	}
+
+	/**
+	 * Finds the start of the first line at or after an offset.
+	 *
+	 * @param channel the file
+	 * @param offset the offset to search from
+	 * @param probe a buffer to read with
+	 * @return the offset right after the next line feed, or the size of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	private static long nextLine(FileChannel channel, long offset, ByteBuffer probe) throws IOException {
+		if (offset == 0) {
+			return 0;
+		}
+
+		// the line starts right here if the byte before it ends a line
+		long position = offset - 1;
+
+		while (true) {
+			probe.clear();
+			int read = channel.read(probe, position);
+			if (read <= 0) {
+				return channel.size();
+			}
+
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Passes every finished line in the decoded chars to an action.
+	 *
+	 * @param count the number of decoded chars
+	 * @param action what to do with each line
+	 * @return the offset of the unfinished line after the last terminator
+	 */
+	private int forEachLine(int count, LineAction action) {
+		int lineStart = 0;
+
+		for (int i = 0; i < count; i++) {
+			char c = array[i];
+
+			if (c == '\n' || c == '\r') {
+				action.accept(array, lineStart, i);
+
+				// a carriage return split from its line feed only adds an empty line
+				if (c == '\r' && i + 1 < count && array[i + 1] == '\n') {
+					i++;
+				}
+				lineStart = i + 1;
+			}
+		}
+
+		return lineStart;
+	}
+}
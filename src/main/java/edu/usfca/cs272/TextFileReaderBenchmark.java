@@ -0,0 +1,195 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Measures how fast the lines of text files are read by a {@link TextFileReader}
+ * compared to {@link BufferedReader#readLine()}, on a corpus of many small files
+ * and on one of a few huge files. The huge files are big enough to be mapped into
+ * memory instead of read in chunks. Only reading and decoding is measured, each
+ * line is just added to a checksum, so the difference is not hidden behind the
+ * cost of stemming.
+ *
+ * The corpora are written to a temporary directory and deleted at the end. They
+ * are read once before measuring, so the numbers are for files that are already
+ * cached by the operating system.
+ *
+ * Usage: {@code TextFileReaderBenchmark [small files] [huge file megabytes]}
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class TextFileReaderBenchmark {
+	/** The number of times each measurement is repeated, keeping the best */
+	private static final int ROUNDS = 5;
+
+	/** The size of each small file in bytes */
+	private static final int SMALL_SIZE = 8 * 1024;
+
+	/** The number of huge files */
+	private static final int HUGE_FILES = 2;
+
+	/**
+	 * Runs the benchmark and prints a table of megabytes per second.
+	 *
+	 * @param args the number of small files and the size of each huge file
+	 * @throws IOException if the corpora cannot be written or read
+	 */
+	public static void main(String[] args) throws IOException {
+		int smallFiles = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+		int hugeMegabytes = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+
+		Path directory = Files.createTempDirectory("reader");
+		Random random = new Random(272);
+
+		try {
+			List<Path> small = new ArrayList<>();
+			for (int i = 0; i < smallFiles; i++) {
+				small.add(write(directory.resolve("small" + i + ".txt"), SMALL_SIZE, random));
+			}
+
+			List<Path> huge = new ArrayList<>();
+			for (int i = 0; i < HUGE_FILES; i++) {
+				huge.add(write(directory.resolve("huge" + i + ".txt"), hugeMegabytes * 1024L * 1024L, random));
+			}
+
+			System.out.printf("%-22s %14s %16s%n", "corpus", "readLine MB/s", "TextFileReader");
+			report(smallFiles + " x 8 KB", small);
+			report(HUGE_FILES + " x " + hugeMegabytes + " MB", huge);
+		} finally {
+			try (Stream<Path> paths = Files.walk(directory)) {
+				for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Measures both readers on a corpus and prints a line of the table.
+	 *
+	 * @param name the name of the corpus
+	 * @param files the files of the corpus
+	 * @throws IOException if a file cannot be read
+	 */
+	private static void report(String name, List<Path> files) throws IOException {
+		long bytes = 0;
+		for (Path file : files) {
+			bytes += Files.size(file);
+		}
+
+		// also warms up both readers and the file cache
+		TextFileReader reader = new TextFileReader();
+		if (read(files, false, reader) != read(files, true, reader)) {
+			throw new IllegalStateException("The readers found different lines");
+		}
+
+		double megabytes = bytes / (1024.0 * 1024.0);
+		double lines = megabytes / (measure(files, false) / 1e9);
+		double chunks = megabytes / (measure(files, true) / 1e9);
+
+		System.out.printf("%-22s %14.0f %16.0f%n", name, lines, chunks);
+	}
+
+	/**
+	 * Measures the best time to read every line of the files over a few rounds.
+	 *
+	 * @param files the files to read
+	 * @param chunked whether to use a {@link TextFileReader} instead of readLine
+	 * @return the best time in nanoseconds
+	 * @throws IOException if a file cannot be read
+	 */
+	public static long measure(List<Path> files, boolean chunked) throws IOException {
+		TextFileReader reader = new TextFileReader();
+		long best = Long.MAX_VALUE;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			read(files, chunked, reader);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		return best;
+	}
+
+	/**
+	 * Reads every line of the files, adding up the line lengths and the first char
+	 * of each line so the lines cannot be skipped.
+	 *
+	 * @param files the files to read
+	 * @param chunked whether to use the reader instead of readLine
+	 * @param reader the reader to use
+	 * @return the checksum of the lines
+	 * @throws IOException if a file cannot be read
+	 */
+	private static long read(List<Path> files, boolean chunked, TextFileReader reader) throws IOException {
+		long[] checksum = { 0 };
+
+		for (Path file : files) {
+			if (chunked) {
+				reader.forEachLine(file, (chars, start, end) -> {
+					checksum[0] += end - start + (end > start ? chars[start] : 0);
+				});
+			} else {
+				try (BufferedReader buffered = Files.newBufferedReader(file, UTF_8)) {
+					String line;
+					while ((line = buffered.readLine()) != null) {
+						checksum[0] += line.length() + (line.isEmpty() ? 0 : line.charAt(0));
+					}
+				}
+			}
+		}
+
+		return checksum[0];
+	}
+
+	/**
+	 * Writes a file of lines of made up words, with some accented letters so the
+	 * text is not all ASCII.
+	 *
+	 * @param path the file to write
+	 * @param size about how many bytes to write
+	 * @param random the source of the words
+	 * @return the path written
+	 * @throws IOException if the file cannot be written
+	 */
+	private static Path write(Path path, long size, Random random) throws IOException {
+		String letters = "abcdefghijklmnopqrstuvwxyz\u00e9\u00fc";
+
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			StringBuilder line = new StringBuilder();
+			long written = 0;
+
+			while (written < size) {
+				line.setLength(0);
+				int words = 1 + random.nextInt(15);
+
+				for (int i = 0; i < words; i++) {
+					int length = 1 + random.nextInt(9);
+					for (int j = 0; j < length; j++) {
+						line.append(letters.charAt(random.nextInt(letters.length())));
+					}
+					line.append(' ');
+				}
+
+				writer.write(line.toString());
+				writer.newLine();
+				written += line.length() + 1;
+			}
+		}
+
+		return path;
+	}
+}
@@ -2,8 +2,11 @@ package edu.usfca.cs272;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.ToIntFunction;
 
 
 /**ThreadSafeInvertedIndex class extends the InvertedIndex class with threadsafe methods 
@@ -23,8 +26,29 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 *
 	 */
 	public ThreadSafeInvertedIndex() {
-		super();
-		this.lock = new MultiReaderLock();
+		this(false);
+	}
+
+	/**
+	 * Initializes a thread-safe indexed set.
+	 *
+	 * @param packed whether to delta and varint pack the position lists
+	 */
+	public ThreadSafeInvertedIndex(boolean packed) {
+		this(packed, true);
+	}
+
+	/**
+	 * Initializes a thread-safe indexed set, or leaves out its data structures and
+	 * lock for subclasses that keep their words somewhere else.
+	 *
+	 * @param packed whether to delta and varint pack the position lists
+	 * @param allocate whether to create the data structures and lock of this class
+	 * @see InvertedIndex#InvertedIndex(boolean, boolean)
+	 */
+	protected ThreadSafeInvertedIndex(boolean packed, boolean allocate) {
+		super(packed, allocate);
+		this.lock = allocate ? new MultiReaderLock() : null;
 	}
 	
 	/**
@@ -77,6 +101,84 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+
+	/**
+	 * Adds all the words of a single file at once.
+	 * 
+	 * @param file The words and positions of one file.
+	 */
+	@Override
+	public void addDistinct(FileIndexBuilder file) {
+		lock.writeLock().lock();
+		try {
+			super.addDistinct(file);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a location and all of its words from the index.
+	 * 
+	 * @param location The file location to remove.
+	 */
+	@Override
+	public void removeLocation(String location) {
+		lock.writeLock().lock();
+		try {
+			super.removeLocation(location);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Splits the words of this index between several new indexes.
+	 * 
+	 * @param parts The number of parts.
+	 * @param partOf Picks the part of a word, from 0 up to one less than parts.
+	 * @return The parts, each with the words picked for it.
+	 */
+	@Override
+	public InvertedIndex[] split(int parts, ToIntFunction<String> partOf) {
+		lock.readLock().lock();
+		try {
+			return super.split(parts, partOf);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes several locations and all of their words from the index.
+	 * 
+	 * @param locations The file locations to remove.
+	 */
+	@Override
+	public void removeLocations(Collection<String> locations) {
+		lock.writeLock().lock();
+		try {
+			super.removeLocations(locations);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Creates an immutable, read-optimized snapshot of the index. The snapshot
+	 * does not need any locking to be searched.
+	 * 
+	 * @return A frozen copy of the index.
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		lock.readLock().lock();
+		try {
+			return super.freeze();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
 	
 	/**
 	 * Checks if the index contains a word.
@@ -144,6 +246,21 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Retrieves every location with any words in the index.
+	 * 
+	 * @return An unmodifiable sorted set of the locations.
+	 */
+	@Override
+	public Set<String> getLocations() {
+		lock.readLock().lock();
+		try {
+			return super.getLocations();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Retrieves all the locations and their positions for a given word.
 	 * 
@@ -259,13 +376,14 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * list of FileResult objects.
 	 *
 	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @param limit the most results to return
 	 * @return a sorted list of FileResult objects
 	 */
 	@Override
-	public List<FileResult> searchExact(Set<String> cleanedUniqueQueries) {
+	public List<FileResult> searchExact(Set<String> cleanedUniqueQueries, int limit) {
 		lock.readLock().lock();
 		try {
-			return super.searchExact(cleanedUniqueQueries);
+			return super.searchExact(cleanedUniqueQueries, limit);
 		} finally {
 			lock.readLock().unlock();
 		}
@@ -276,13 +394,32 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * list of FileResult objects.
 	 *
 	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @param limit the most results to return
 	 * @return a sorted list of FileResult objects
 	 */
 	@Override
-	public List<FileResult> searchPartial(Set<String> cleanedUniqueQueries) {
+	public List<FileResult> searchPartial(Set<String> cleanedUniqueQueries, int limit) {
 		lock.readLock().lock();
 		try {
-			return super.searchPartial(cleanedUniqueQueries);
+			return super.searchPartial(cleanedUniqueQueries, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts the matches of every location for a search, without scoring or
+	 * sorting them.
+	 *
+	 * @param cleanedUniqueQueries the cleaned and unique queries
+	 * @param isPartial determines partial or exact search
+	 * @return the number of matches of each location, in no particular order
+	 */
+	@Override
+	public Map<String, Integer> searchCounts(Set<String> cleanedUniqueQueries, boolean isPartial) {
+		lock.readLock().lock();
+		try {
+			return super.searchCounts(cleanedUniqueQueries, isPartial);
 		} finally {
 			lock.readLock().unlock();
 		}
@@ -305,6 +442,22 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Converts a location id back into its path.
+	 * 
+	 * @param id The location id.
+	 * @return The file location for that id.
+	 */
+	@Override
+	public String getLocation(int id) {
+		lock.readLock().lock();
+		try {
+			return super.getLocation(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Gets the total number of words in a specific location.
 	 * 
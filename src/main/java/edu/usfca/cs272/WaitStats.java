@@ -0,0 +1,144 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps how long tasks waited for a worker as a histogram, so percentiles can
+ * be read without keeping every wait time. Each power of two is split into 8
+ * buckets, so a percentile is at most about 12% above the real wait. Recording
+ * is lock-free and any number of workers may record at once.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class WaitStats {
+	/** The number of buckets each power of two is split into, as bits */
+	private static final int SUB_BITS = 3;
+
+	/** The number of buckets each power of two is split into */
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/** The number of tasks in each bucket */
+	private final AtomicLongArray buckets;
+
+	/** The number of tasks dropped because their deadline passed first */
+	private final LongAdder expired;
+
+	/**
+	 * Initializes empty statistics.
+	 */
+	public WaitStats() {
+		this.buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+		this.expired = new LongAdder();
+	}
+
+	/**
+	 * Finds the bucket of a wait time.
+	 *
+	 * @param nanos the wait time in nanoseconds
+	 * @return the bucket index
+	 */
+	private static int bucket(long nanos) {
+		long value = Math.max(1, nanos);
+		int power = 63 - Long.numberOfLeadingZeros(value);
+
+		if (power < SUB_BITS) {
+			return (int) value;
+		}
+
+		// the bits right below the highest one pick the bucket within the power
+		int sub = (int) (value >>> (power - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (power - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the longest wait time that falls into a bucket.
+	 *
+	 * @param bucket the bucket index
+	 * @return the upper bound of the bucket in nanoseconds
+	 */
+	private static long upper(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int power = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long base = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (power - SUB_BITS);
+		return base + (1L << (power - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Records the wait of one task.
+	 *
+	 * @param nanos how long the task waited in nanoseconds
+	 */
+	public void record(long nanos) {
+		buckets.incrementAndGet(bucket(nanos));
+	}
+
+	/**
+	 * Records that a task was dropped because its deadline passed.
+	 */
+	public void expire() {
+		expired.increment();
+	}
+
+	/**
+	 * Returns the number of waits recorded, including those of dropped tasks.
+	 *
+	 * @return the number of waits
+	 */
+	public long count() {
+		long count = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of tasks dropped because their deadline passed.
+	 *
+	 * @return the number of expired tasks
+	 */
+	public long expired() {
+		return expired.sum();
+	}
+
+	/**
+	 * Returns the wait time that a fraction of the tasks waited at most.
+	 *
+	 * @param fraction the fraction of tasks, such as 0.99 for the 99th percentile
+	 * @return the wait time in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long percentile(double fraction) {
+		long[] counts = new long[buckets.length()];
+		long total = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+
+		long target = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+
+			if (seen >= target) {
+				return upper(i);
+			}
+		}
+
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d tasks, waited p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, %d expired",
+				count(), percentile(0.5) / 1e6, percentile(0.9) / 1e6, percentile(0.99) / 1e6, expired());
+	}
+}
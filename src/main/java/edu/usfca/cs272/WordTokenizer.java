@@ -0,0 +1,355 @@
+package edu.usfca.cs272;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Splits lines of text into clean words in a single pass, without the regular
+ * expressions and string copies of {@link FileStemmer#clean(String)} and
+ * {@link FileStemmer#split(String)}. The words are exactly the ones
+ * {@link FileStemmer#parse(String)} would return, but each word is written into a
+ * buffer that is reused for the next word.
+ *
+ * A line that is only ASCII is already in NFD form, so it is not normalized at
+ * all. Other lines are normalized once and then read by code point, dropping
+ * anything that is not a letter or whitespace just like the clean regex does.
+ * The rare line with a capital sigma is cleaned the old way instead, since
+ * lowercasing it depends on the text around each word.
+ *
+ * Usage:
+ *
+ * <pre>
+ * tokenizer.reset(line);
+ * while (tokenizer.next()) {
+ *   stemmer.stem(tokenizer.word());
+ * }
+ * </pre>
+ *
+ * Warning: This class is not thread-safe, each thread should use its own
+ * tokenizer.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class WordTokenizer {
+	/** The chars of the text being split, normalized if it was not ASCII */
+	private char[] text;
+
+	/** The reusable copy of the last line that was not already in an array */
+	private char[] copy;
+
+	/** The offset of the next char of the text to read */
+	private int offset;
+
+	/** The offset just past the last char of the text to read */
+	private int end;
+
+	/** The chars of the current word */
+	private char[] buffer;
+
+	/** The number of chars in the current word */
+	private int length;
+
+	/** Whether the next word is the empty word the split regex makes in some cases */
+	private boolean emptyNext;
+
+	/** Whether the text was already cleaned and lowercased as a whole line */
+	private boolean lowered;
+
+	/** Whether ASCII letters can be lowercased without looking at the locale */
+	private final boolean simpleLowerCase;
+
+	/** A view of the current word */
+	private final CharSequence word;
+
+	/**
+	 * Initializes a tokenizer with no text.
+	 */
+	public WordTokenizer() {
+		this.copy = new char[128];
+		this.text = copy;
+		this.offset = 0;
+		this.end = 0;
+		this.buffer = new char[32];
+		this.length = 0;
+		this.emptyNext = false;
+		this.lowered = false;
+
+		// String.toLowerCase only has special rules for these languages
+		String language = Locale.getDefault().getLanguage();
+		this.simpleLowerCase = !(language.equals("tr") || language.equals("az") || language.equals("lt"));
+
+		this.word = new Word();
+	}
+
+	/**
+	 * Starts splitting a new line of text.
+	 *
+	 * @param line the text to split
+	 */
+	public void reset(String line) {
+		char[] chars = copyOf(line);
+		reset(chars, 0, line.length());
+	}
+
+	/**
+	 * Starts splitting a single line of text that is part of a larger array of
+	 * chars, such as a buffer of a file being read. ASCII lines are read in place
+	 * without copying them, so the array must not change until the last word.
+	 *
+	 * @param chars the chars containing the line
+	 * @param start the offset of the first char of the line
+	 * @param end the offset just past the last char of the line, not counting the
+	 *   line terminator
+	 */
+	public void reset(char[] chars, int start, int end) {
+		this.lowered = false;
+
+		if (isAscii(chars, start, end)) {
+			this.text = chars;
+			this.offset = start;
+			this.end = end;
+		} else {
+			String line = new String(chars, start, end - start);
+			String normalized = Normalizer.normalize(line, Normalizer.Form.NFD);
+			this.lowered = normalized.indexOf('\u03A3') >= 0;
+
+			// whether a capital sigma is final depends on more than its own word
+			String cleaned = lowered ? FileStemmer.clean(line) : normalized;
+			this.text = copyOf(cleaned);
+			this.offset = 0;
+			this.end = cleaned.length();
+		}
+
+		this.length = 0;
+		this.emptyNext = startsWithUnstrippedSpace(text, offset, this.end);
+	}
+
+	/**
+	 * Moves to the next word of the text.
+	 *
+	 * @return true if there was another word, false at the end of the text
+	 */
+	public boolean next() {
+		if (emptyNext) {
+			emptyNext = false;
+
+			if (hasLetter(text, offset, end)) {
+				length = 0;
+				return true;
+			}
+		}
+
+		while (offset < end) {
+			// skip the whitespace before the word
+			int cp = Character.codePointAt(text, offset, end);
+			if (isSpace(cp)) {
+				offset += Character.charCount(cp);
+				continue;
+			}
+
+			length = 0;
+			boolean ascii = true;
+
+			// keep only the letters up to the next whitespace
+			while (offset < end) {
+				cp = Character.codePointAt(text, offset, end);
+				if (isSpace(cp)) {
+					break;
+				}
+
+				offset += Character.charCount(cp);
+
+				if (Character.isAlphabetic(cp)) {
+					ascii &= cp < 0x80;
+					append(cp);
+				}
+			}
+
+			if (length > 0) {
+				if (!lowered) {
+					lowerCase(ascii);
+				}
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the current word. The view changes when {@link #next()} is called, so
+	 * use {@link CharSequence#toString()} to keep it.
+	 *
+	 * @return the current word
+	 */
+	public CharSequence word() {
+		return word;
+	}
+
+	/**
+	 * Adds a code point to the end of the current word.
+	 *
+	 * @param cp the code point to add
+	 */
+	private void append(int cp) {
+		if (length + 2 > buffer.length) {
+			char[] grown = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+		length += Character.toChars(cp, buffer, length);
+	}
+
+	/**
+	 * Lowercases the current word the same way {@link String#toLowerCase()} does.
+	 *
+	 * @param ascii whether the word is only ASCII
+	 */
+	private void lowerCase(boolean ascii) {
+		if (ascii && simpleLowerCase) {
+			for (int i = 0; i < length; i++) {
+				char c = buffer[i];
+				if (c >= 'A' && c <= 'Z') {
+					buffer[i] = (char) (c + ('a' - 'A'));
+				}
+			}
+			return;
+		}
+
+		// some letters and locales have special rules, so leave them to String
+		String lower = new String(buffer, 0, length).toLowerCase();
+		length = 0;
+		for (int i = 0; i < lower.length(); i++) {
+			if (length == buffer.length) {
+				char[] grown = new char[buffer.length * 2];
+				System.arraycopy(buffer, 0, grown, 0, length);
+				buffer = grown;
+			}
+			buffer[length++] = lower.charAt(i);
+		}
+	}
+
+	/**
+	 * Checks if a code point is whitespace as matched by {@code \p{Space}} with
+	 * Unicode character classes, which is the White_Space property.
+	 *
+	 * @param cp the code point to check
+	 * @return true if it is whitespace
+	 */
+	public static boolean isSpace(int cp) {
+		return ((((1 << Character.SPACE_SEPARATOR) | (1 << Character.LINE_SEPARATOR)
+				| (1 << Character.PARAGRAPH_SEPARATOR)) >> Character.getType(cp)) & 1) != 0
+				|| (cp >= 0x9 && cp <= 0xd) || cp == 0x85;
+	}
+
+	/**
+	 * Copies text into the reusable array, growing it if needed.
+	 *
+	 * @param text the text to copy
+	 * @return the array holding the text from offset 0
+	 */
+	private char[] copyOf(String text) {
+		if (text.length() > copy.length) {
+			copy = new char[Math.max(text.length(), copy.length * 2)];
+		}
+		text.getChars(0, text.length(), copy, 0);
+		return copy;
+	}
+
+	/**
+	 * Checks if part of the text is only ASCII.
+	 *
+	 * @param text the text to check
+	 * @param start the offset to start at
+	 * @param end the offset to stop before
+	 * @return true if every char is ASCII
+	 */
+	private static boolean isAscii(char[] text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (text[i] >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if there is a letter anywhere between two offsets.
+	 *
+	 * @param text the text to check
+	 * @param offset the offset to start at
+	 * @param end the offset to stop before
+	 * @return true if there is a letter
+	 */
+	private static boolean hasLetter(char[] text, int offset, int end) {
+		while (offset < end) {
+			int cp = Character.codePointAt(text, offset, end);
+			if (Character.isAlphabetic(cp)) {
+				return true;
+			}
+			offset += Character.charCount(cp);
+		}
+		return false;
+	}
+
+	/**
+	 * Checks for the case where {@link FileStemmer#split(String)} returns an empty
+	 * first word. That happens when the cleaned text starts with whitespace that
+	 * {@link String#strip()} does not remove, such as a no-break space, since the
+	 * split regex then matches at the very start. Chars the clean regex removes are
+	 * skipped, since they would already be gone.
+	 *
+	 * @param text the normalized text
+	 * @param offset the offset of the start of the line
+	 * @param end the offset of the end of the line
+	 * @return true if the first word should be empty
+	 */
+	private static boolean startsWithUnstrippedSpace(char[] text, int offset, int end) {
+		while (offset < end) {
+			int cp = Character.codePointAt(text, offset, end);
+			boolean space = isSpace(cp);
+
+			if (!Character.isWhitespace(cp) && (space || Character.isAlphabetic(cp))) {
+				return space;
+			}
+
+			offset += Character.charCount(cp);
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return word.toString();
+	}
+
+	/**
+	 * A view of the chars of the current word.
+	 */
+	private class Word implements CharSequence {
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException(index);
+			}
+			return buffer[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buffer, 0, length);
+		}
+	}
+}
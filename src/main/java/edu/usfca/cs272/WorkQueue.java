@@ -1,6 +1,14 @@
 package edu.usfca.cs272;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -11,6 +19,23 @@ import org.apache.logging.log4j.Logger;
  * Brian Goetz. It is up to the user of this class to keep track of whether
  * there is any pending work remaining.
  *
+ * The queue may be given a capacity, in which case it never holds more than that
+ * many tasks waiting for a worker, and what happens to a task submitted while it
+ * is full is decided by its {@link Overflow} policy. Either way the deepest the
+ * queue got is kept as its high-water mark.
+ *
+ * Tasks are submitted with a {@link Priority}, and each priority has its own
+ * lane. The workers take tasks from the lanes by weight, so for every task taken
+ * from a lane of weight 1, up to 8 are taken from one of weight 8 while it has
+ * any, and higher priorities go first. A task may also be given a longest wait,
+ * after which it is dropped instead of run. How long the tasks of each priority
+ * waited is kept in {@link WaitStats}.
+ *
+ * The number of workers is fixed unless the queue is made adaptive with
+ * {@link #adapt(int, int)}, in which case it is resized between the bounds
+ * every {@link #ADAPT_INTERVAL} by looking at how many tasks finished, how many
+ * are waiting, and how long the workers sat idle.
+ *
  * @see <a href=
  *   "https://web.archive.org/web/20210126172022/https://www.ibm.com/developerworks/library/j-jtp0730/index.html">
  *   Java Theory and Practice: Thread Pools and Work Queues</a>
@@ -18,12 +43,15 @@ import org.apache.logging.log4j.Logger;
  * @author CS 272 Software Development (University of San Francisco)
  * @version Fall 2023
  */
-public class WorkQueue {
-	/** Workers that wait until work (or tasks) are available. */
-	private final Worker[] workers;
+public class WorkQueue implements TaskInterface {
+	/** Workers that wait until work (or tasks) are available. Guarded by the tasks. */
+	private final List<Worker> workers;
 
-	/** Queue of pending work (or tasks). */
-	private final LinkedList<Runnable> tasks;
+	/** The number of workers asked to stop so the queue shrinks. Guarded by the tasks. */
+	private int retiring;
+
+	/** Queue of pending work (or tasks), a lane for each priority. */
+	private final Lanes tasks;
 
 	/** Used to signal the workers should terminate. */
 	private volatile boolean shutdown;
@@ -31,15 +59,120 @@ public class WorkQueue {
 	/** The default number of worker threads to use when not specified. */
 	public static final int DEFAULT = 5;
 
+	/** The capacity of a queue that may grow without limit. */
+	public static final int UNBOUNDED = 0;
+
+	/** How often an adaptive queue decides whether to resize */
+	public static final Duration ADAPT_INTERVAL = Duration.ofMillis(250);
+
+	/**
+	 * How urgent a task is, which decides the lane it waits in.
+	 */
+	public enum Priority {
+		/** Tasks someone is waiting on, such as searches */
+		HIGH(8),
+
+		/** Tasks without a priority */
+		NORMAL(4),
+
+		/** Bulk tasks that may wait, such as background merges */
+		LOW(1);
+
+		/** The share of tasks taken from this lane when every lane has some */
+		private final int weight;
+
+		/**
+		 * Initializes a priority.
+		 *
+		 * @param weight the default weight of the lane
+		 */
+		Priority(int weight) {
+			this.weight = weight;
+		}
+
+		/**
+		 * Returns the default weight of the lane of this priority.
+		 *
+		 * @return the default weight
+		 */
+		public int weight() {
+			return weight;
+		}
+	}
+
+	/**
+	 * What to do with a task submitted while the queue is at its capacity.
+	 */
+	public enum Overflow {
+		/** Wait until a worker takes a task off the queue */
+		BLOCK,
+
+		/** Run the task right away in the thread that submitted it */
+		CALLER_RUNS,
+
+		/** Throw a {@link RejectedExecutionException}, unless a worker submitted it */
+		REJECT;
+
+		/**
+		 * Finds the policy with a name, ignoring case and dashes.
+		 *
+		 * @param name the name of the policy, such as "block" or "caller-runs"
+		 * @param backup the policy to use when the name is not known
+		 * @return the policy with that name, or the backup
+		 */
+		public static Overflow of(String name, Overflow backup) {
+			if (name != null) {
+				for (Overflow overflow : values()) {
+					if (overflow.name().equalsIgnoreCase(name.replace('-', '_'))) {
+						return overflow;
+					}
+				}
+			}
+			return backup;
+		}
+	}
+
 	/** Logger used for this class. */
 	private static final Logger log = LogManager.getLogger();
 
+	/** Logger for the reports on how a run went, shown with the -stats flag */
+	private static final Logger stats = LogManager.getLogger("stats");
+
 	/** Added two new members, one for managing pending task*/
 	private final Object pendingLock;
 
 	/** One for tracking pending tasks(unfinished)*/
 	private int pending;
 
+	/** The most tasks that may wait for a worker, or unbounded */
+	private final int capacity;
+
+	/** The free places in the queue, or null if it is unbounded */
+	private final Semaphore slots;
+
+	/** What to do with a task when the queue is full */
+	private final Overflow overflow;
+
+	/** The number of tasks waiting for a worker */
+	private final AtomicInteger depth;
+
+	/** The most tasks that were ever waiting for a worker at once */
+	private final AtomicInteger highWater;
+
+	/** The number of tasks that did not fit in the queue */
+	private final AtomicInteger overflowed;
+
+	/** How long the tasks of each priority waited */
+	private final WaitStats[] waits;
+
+	/** The number of tasks the workers finished */
+	private final LongAdder completed;
+
+	/** The total time the workers spent waiting for tasks, in nanoseconds */
+	private final LongAdder idleNanos;
+
+	/** The thread resizing an adaptive queue, or null */
+	private Sizer sizer;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -56,17 +189,96 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		this.tasks = new LinkedList<Runnable>();
-		this.workers = new Worker[threads];
+		this(threads, UNBOUNDED, Overflow.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads that holds at most
+	 * some number of waiting tasks.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 * @param capacity the most tasks that may wait for a worker, or
+	 *   {@link #UNBOUNDED}
+	 * @param overflow what to do with a task submitted while the queue is full
+	 */
+	public WorkQueue(int threads, int capacity, Overflow overflow) {
+		this.capacity = Math.max(UNBOUNDED, capacity);
+		this.slots = capacity > 0 ? new Semaphore(capacity) : null;
+		this.overflow = overflow;
+		this.depth = new AtomicInteger();
+		this.highWater = new AtomicInteger();
+		this.overflowed = new AtomicInteger();
+		this.waits = new WaitStats[Priority.values().length];
+		for (int i = 0; i < waits.length; i++) {
+			waits[i] = new WaitStats();
+		}
+
+		this.completed = new LongAdder();
+		this.idleNanos = new LongAdder();
+		this.tasks = new Lanes();
+		this.workers = new ArrayList<>(threads);
+		this.retiring = 0;
 		this.shutdown = false;
 		this.pendingLock = new Object();
 		this.pending = 0;
 
 
 		// start the threads so they are waiting in the background
-		for (int i = 0; i < threads; i++) {
-			workers[i] = new Worker();
-			workers[i].start();
+		synchronized (tasks) {
+			resize(threads);
+		}
+	}
+
+	/**
+	 * Starts or stops workers until there are the specified number of them. Must
+	 * be called while holding the tasks.
+	 *
+	 * @param threads the number of workers to have
+	 */
+	private void resize(int threads) {
+		int current = workers.size() - retiring;
+
+		// workers still retiring are told to stay before any new ones start
+		while (current < threads && retiring > 0) {
+			retiring--;
+			current++;
+		}
+
+		for (; current < threads; current++) {
+			Worker worker = new Worker();
+			workers.add(worker);
+			worker.start();
+		}
+
+		if (current > threads) {
+			retiring += current - threads;
+			tasks.notifyAll();
+		}
+	}
+
+	/**
+	 * Makes the queue adaptive, so the number of workers is grown while tasks are
+	 * waiting and more workers still get more done, and shrunk while workers are
+	 * mostly idle. Every decision is logged. The current number of workers is
+	 * moved within the bounds right away.
+	 *
+	 * @param min the fewest workers to keep, at least 1
+	 * @param max the most workers to have, at least min
+	 */
+	public void adapt(int min, int max) {
+		int low = Math.max(1, min);
+		int high = Math.max(low, max);
+
+		synchronized (tasks) {
+			int current = workers.size() - retiring;
+			resize(Math.min(high, Math.max(low, current)));
+
+			if (sizer != null) {
+				sizer.interrupt();
+			}
+
+			sizer = new Sizer(low, high);
+			sizer.start();
 		}
 	}
 
@@ -76,14 +288,210 @@ public class WorkQueue {
 	 *
 	 * @param task work request (in the form of a {@link Runnable} object)
 	 */
+	@Override
 	public void execute(Runnable task) {
+		execute(task, Priority.NORMAL, null);
+	}
+
+	/**
+	 * Adds a work (or task) request to the lane of a priority.
+	 *
+	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @param priority how urgent the task is
+	 */
+	@Override
+	public void execute(Runnable task, Priority priority) {
+		execute(task, priority, null);
+	}
+
+	/**
+	 * Adds a work (or task) request to the lane of a priority, to be dropped if no
+	 * worker gets to it in time.
+	 *
+	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @param priority how urgent the task is
+	 * @param maxWait the longest the task may wait before it is dropped, or null
+	 *   to wait as long as it takes
+	 */
+	@Override
+	public void execute(Runnable task, Priority priority, Duration maxWait) {
+		Runnable timed = timed(task, priority, maxWait);
+
+		if (!admit(timed)) {
+			return;
+		}
+
 		incrementPending();
 		synchronized (tasks) {
-			tasks.addLast(task);
+			tasks.addLast(priority, timed);
 			tasks.notifyAll();
 		}
 	}
 
+	/**
+	 * Wraps a task so it records how long it waited when it starts, and skips
+	 * itself if it waited past its deadline.
+	 *
+	 * @param task the task to wrap
+	 * @param priority the priority whose wait times to record into
+	 * @param maxWait the longest the task may wait, or null
+	 * @return the wrapped task
+	 */
+	protected Runnable timed(Runnable task, Priority priority, Duration maxWait) {
+		WaitStats stats = waits[priority.ordinal()];
+		long submitted = System.nanoTime();
+		long limit = maxWait == null ? Long.MAX_VALUE : maxWait.toNanos();
+
+		return () -> {
+			long waited = System.nanoTime() - submitted;
+			stats.record(waited);
+
+			if (waited > limit) {
+				stats.expire();
+				return;
+			}
+
+			task.run();
+		};
+	}
+
+	/**
+	 * Changes the share of tasks taken from the lane of a priority. Priorities
+	 * start with their {@link Priority#weight()}.
+	 *
+	 * @param priority the priority to change
+	 * @param weight the number of tasks taken from the lane in each round, at least 1
+	 */
+	public void setWeight(Priority priority, int weight) {
+		synchronized (tasks) {
+			tasks.weights[priority.ordinal()] = Math.max(1, weight);
+		}
+	}
+
+	/**
+	 * Returns how long the tasks of a priority waited before they started.
+	 *
+	 * @param priority the priority
+	 * @return the wait statistics of the priority
+	 */
+	public WaitStats waitStats(Priority priority) {
+		return waits[priority.ordinal()];
+	}
+
+	/**
+	 * Starts a group of tasks on this queue that can be waited on, checked for
+	 * failures, and cancelled without affecting any other tasks.
+	 *
+	 * @return a new empty group
+	 */
+	public TaskGroup group() {
+		return new TaskGroup(this);
+	}
+
+	/**
+	 * Makes room in the queue for a task about to be added, following the overflow
+	 * policy when it is full. Workers of this queue never block on a full queue,
+	 * since they are the ones who would have to empty it, and are never rejected
+	 * either, since the task they split off is part of one already accepted. They
+	 * run the task themselves instead.
+	 *
+	 * @param task the task to add
+	 * @return true if the task should be added, or false if it already ran
+	 * @throws RejectedExecutionException if the queue is full, rejects tasks, and
+	 *   the caller is not one of its workers
+	 */
+	protected boolean admit(Runnable task) {
+		if (slots != null && !slots.tryAcquire()) {
+			overflowed.incrementAndGet();
+
+			if (overflow == Overflow.CALLER_RUNS || isWorker()) {
+				runInline(task);
+				return false;
+			}
+
+			if (overflow == Overflow.REJECT) {
+				throw new RejectedExecutionException("The work queue is full.");
+			}
+
+			try {
+				slots.acquire();
+			} catch (InterruptedException e) {
+				System.err.println("Warning: work queue is interrupted while waiting for room");
+				log.catching(Level.WARN, e);
+				Thread.currentThread().interrupt();
+
+				// the task is not dropped, just not queued
+				runInline(task);
+				return false;
+			}
+		}
+
+		highWater.accumulateAndGet(depth.incrementAndGet(), Math::max);
+		return true;
+	}
+
+	/**
+	 * Frees the place of a task a worker took off the queue.
+	 */
+	protected void taken() {
+		depth.decrementAndGet();
+
+		if (slots != null) {
+			slots.release();
+		}
+	}
+
+	/**
+	 * Runs a task in the calling thread instead of a worker.
+	 *
+	 * @param task the task to run
+	 */
+	private static void runInline(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			System.err.printf("Error: %s encountered an exception while running.%n", Thread.currentThread().getName());
+			log.catching(Level.ERROR, e);
+		}
+	}
+
+	/**
+	 * Checks if the calling thread is one of the workers of this queue.
+	 *
+	 * @return true if called from inside a task of this queue
+	 */
+	protected boolean isWorker() {
+		Thread current = Thread.currentThread();
+		return current instanceof Worker && ((Worker) current).owner() == this;
+	}
+
+	/**
+	 * Returns the most tasks that may wait for a worker.
+	 *
+	 * @return the capacity, or {@link #UNBOUNDED}
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the most tasks that were ever waiting for a worker at once.
+	 *
+	 * @return the high-water mark of the queue depth
+	 */
+	public int highWaterMark() {
+		return highWater.get();
+	}
+
+	/**
+	 * Returns the number of tasks that were submitted while the queue was full.
+	 *
+	 * @return the number of tasks that blocked, ran in the caller, or were rejected
+	 */
+	public int overflowed() {
+		return overflowed.get();
+	}
+
 	/**
 	 * To keep track of pending tasks, increment up
 	 */
@@ -111,6 +519,7 @@ public class WorkQueue {
 	 * Waits for all pending work (or tasks) to be finished. Does not terminate the
 	 * worker threads so that the work queue can continue to be used.
 	 */
+	@Override
 	public void finish() {
 		synchronized(pendingLock) {
 			while (pending > 0) {
@@ -135,7 +544,12 @@ public class WorkQueue {
 			finish();
 			shutdown();
 
-			for (Worker worker : workers) {
+			List<Worker> started;
+			synchronized (tasks) {
+				started = new ArrayList<>(workers);
+			}
+
+			for (Worker worker : started) {
 				worker.join();
 			}
 		}
@@ -155,6 +569,10 @@ public class WorkQueue {
 		shutdown = true;
 
 		synchronized (tasks) {
+			if (sizer != null) {
+				sizer.interrupt();
+			}
+
 			tasks.notifyAll();
 		}
 	}
@@ -165,7 +583,102 @@ public class WorkQueue {
 	 * @return number of worker threads
 	 */
 	public int size() {
-		return workers.length;
+		synchronized (tasks) {
+			return workers.size() - retiring;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(String.format("%d workers, %d tasks waiting at most of %s, %d overflowed (%s)",
+				size(), highWaterMark(), capacity == UNBOUNDED ? "unbounded" : capacity, overflowed(), overflow));
+
+		for (Priority priority : Priority.values()) {
+			WaitStats stats = waitStats(priority);
+
+			if (stats.count() > 0) {
+				builder.append("; ").append(priority).append(": ").append(stats);
+			}
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * The tasks waiting for a worker, a first in first out lane for each priority.
+	 * Guarded by itself.
+	 */
+	private static class Lanes {
+		/** The tasks of each priority, oldest first */
+		private final List<LinkedList<Runnable>> lanes;
+
+		/** The number of tasks taken from each lane in a round */
+		private final int[] weights;
+
+		/** The number of tasks each lane may still give in this round */
+		private final int[] credits;
+
+		/** The number of tasks in all the lanes */
+		private int size;
+
+		/**
+		 * Initializes empty lanes with the default weights.
+		 */
+		public Lanes() {
+			Priority[] priorities = Priority.values();
+			this.lanes = new ArrayList<>(priorities.length);
+			this.weights = new int[priorities.length];
+
+			for (Priority priority : priorities) {
+				lanes.add(new LinkedList<>());
+				weights[priority.ordinal()] = priority.weight();
+			}
+
+			this.credits = weights.clone();
+			this.size = 0;
+		}
+
+		/**
+		 * Adds a task to the end of the lane of its priority.
+		 *
+		 * @param priority the priority of the task
+		 * @param task the task to add
+		 */
+		public void addLast(Priority priority, Runnable task) {
+			lanes.get(priority.ordinal()).addLast(task);
+			size++;
+		}
+
+		/**
+		 * Checks if every lane is empty.
+		 *
+		 * @return true if there are no tasks
+		 */
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * Takes the oldest task of the most urgent lane that has not used up its
+		 * share of this round, starting a new round when every lane with tasks has.
+		 * There has to be a task in one of the lanes.
+		 *
+		 * @return the next task
+		 */
+		public Runnable removeFirst() {
+			while (true) {
+				for (int i = 0; i < credits.length; i++) {
+					if (credits[i] > 0 && !lanes.get(i).isEmpty()) {
+						credits[i]--;
+						size--;
+						return lanes.get(i).removeFirst();
+					}
+				}
+
+				// a lane without tasks does not save up its share for later
+				System.arraycopy(weights, 0, credits, 0, weights.length);
+			}
+		}
 	}
 
 	/**
@@ -178,6 +691,9 @@ public class WorkQueue {
 	 * is requested.
 	 */
 	private class Worker extends Thread {
+		/** When the worker started waiting for a task, or 0 while busy. Guarded by the tasks. */
+		private long idleStart;
+
 		/**
 		 * Initializes a worker thread with a custom name.
 		 */
@@ -185,6 +701,15 @@ public class WorkQueue {
 			setName("Worker" + getName());
 		}
 
+		/**
+		 * Returns the queue this worker belongs to.
+		 *
+		 * @return the owning queue
+		 */
+		public WorkQueue owner() {
+			return WorkQueue.this;
+		}
+
 		@Override
 		public void run() {
 			Runnable task = null;
@@ -192,12 +717,28 @@ public class WorkQueue {
 			try {
 				while (true) {
 					synchronized (tasks) {
-						while (tasks.isEmpty() && !shutdown) {
-							tasks.wait();
+						if (tasks.isEmpty() && !shutdown && retiring == 0) {
+							idleStart = System.nanoTime();
+
+							try {
+								while (tasks.isEmpty() && !shutdown && retiring == 0) {
+									tasks.wait();
+								}
+							} finally {
+								idleNanos.add(System.nanoTime() - idleStart);
+								idleStart = 0;
+							}
 						}
 
-						// exit while for one of two reasons:
-						// (a) queue has work, or (b) shutdown has been called
+						// exit while for one of three reasons:
+						// (a) queue has work, (b) shutdown has been called, or
+						// (c) the queue is shrinking
+
+						if (retiring > 0) {
+							retiring--;
+							workers.remove(this);
+							break;
+						}
 
 						if (shutdown && tasks.isEmpty()) {
 							break;
@@ -206,6 +747,8 @@ public class WorkQueue {
 						task = tasks.removeFirst();
 					}
 
+					taken();
+
 					try {
 						task.run();
 					}
@@ -214,6 +757,7 @@ public class WorkQueue {
 						System.err.printf("Error: %s encountered an exception while running.%n", this.getName());
 						log.catching(Level.ERROR, e);
 					} finally {
+						completed.increment();
 						decrementPending();
 					}
 				}
@@ -226,4 +770,112 @@ public class WorkQueue {
 			}
 		}
 	}
+
+	/**
+	 * Resizes an adaptive queue. Every interval it compares the tasks finished to
+	 * the interval before, and grows the queue by a worker while tasks are waiting
+	 * and the workers were hardly idle. If growing did not get more tasks done, the
+	 * worker is taken back and growing waits a while, since more workers than the
+	 * work can use only get in each other's way. The queue shrinks by a worker when
+	 * no tasks are waiting and the workers were idle more than half the time.
+	 */
+	private class Sizer extends Thread {
+		/** The intervals to wait after growing did not help */
+		private static final int COOLDOWN = 8;
+
+		/** The fewest workers to keep */
+		private final int min;
+
+		/** The most workers to have */
+		private final int max;
+
+		/**
+		 * Initializes the sizer.
+		 *
+		 * @param min the fewest workers to keep
+		 * @param max the most workers to have
+		 */
+		public Sizer(int min, int max) {
+			setName("WorkQueueSizer");
+			setDaemon(true);
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public void run() {
+			long lastTime = System.nanoTime();
+			long lastCompleted = completed.sum();
+			long lastIdle = idleNanos.sum();
+			double lastRate = 0;
+			boolean grew = false;
+			int cooldown = 0;
+
+			while (!shutdown) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(ADAPT_INTERVAL.toNanos());
+				} catch (InterruptedException e) {
+					// stopped by shutdown or by a new sizer
+					return;
+				}
+
+				long now = System.nanoTime();
+				long done = completed.sum();
+				int size;
+
+				synchronized (tasks) {
+					// count the idle time of workers still waiting so far
+					for (Worker worker : workers) {
+						if (worker.idleStart != 0) {
+							idleNanos.add(now - worker.idleStart);
+							worker.idleStart = now;
+						}
+					}
+
+					size = workers.size() - retiring;
+				}
+
+				long idle = idleNanos.sum();
+				int waiting = depth.get();
+
+				double seconds = (now - lastTime) / 1e9;
+				double rate = (done - lastCompleted) / seconds;
+				double idleShare = (idle - lastIdle) / 1e9 / seconds / Math.max(1, size);
+
+				lastTime = now;
+				lastCompleted = done;
+				lastIdle = idle;
+
+				int target = size;
+				String reason = null;
+
+				if (grew && rate < lastRate * 1.05 && size > min) {
+					target = size - 1;
+					cooldown = COOLDOWN;
+					reason = "the last worker did not help";
+				} else if (cooldown == 0 && waiting > 0 && idleShare < 0.1 && size < max) {
+					target = size + 1;
+					reason = "tasks are waiting";
+				} else if (waiting == 0 && idleShare > 0.5 && size > min) {
+					target = size - 1;
+					reason = "workers are idle";
+				}
+
+				cooldown = Math.max(0, cooldown - 1);
+				grew = target > size;
+				lastRate = rate;
+
+				if (target != size) {
+					synchronized (tasks) {
+						if (!shutdown) {
+							resize(target);
+						}
+					}
+
+					stats.info("Work queue resized from {} to {} workers because {} ({} tasks/s, {}% idle, {} waiting)",
+							size, target, reason, Math.round(rate), Math.round(idleShare * 100), waiting);
+				}
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Measures how many tasks per second each kind of {@link WorkQueue} gets through
+ * at different numbers of threads. Most tasks do almost no work, so the numbers
+ * are mostly the overhead of handing tasks to the workers, which is what a
+ * query file of many short lines runs into.
+ *
+ * Three kinds of load are run: tasks submitted one after another by the main
+ * thread like the query processor does, tasks that submit more tasks from
+ * inside the workers like walking a directory does, and fewer tasks that each
+ * block for a moment like reading a file that is not cached does.
+ *
+ * Usage: {@code WorkQueueBenchmark [tasks] [max threads]}
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class WorkQueueBenchmark {
+	/** The number of times each measurement is repeated, keeping the best */
+	private static final int ROUNDS = 5;
+
+	/** The number of tasks each task submits in the nested load */
+	private static final int FANOUT = 4;
+
+	/** How long each task of the blocking load blocks for, in microseconds */
+	private static final long BLOCK_MICROS = 500;
+
+	/** The fraction of the tasks run in the blocking load */
+	private static final int BLOCKING_SHARE = 1000;
+
+	/**
+	 * Runs the benchmark and prints a table of tasks per second.
+	 *
+	 * @param args the number of tasks and the most threads to try
+	 */
+	public static void main(String[] args) {
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+		System.out.printf("%-8s %-9s %18s %18s%n", "threads", "load", "WorkQueue", "WorkStealingQueue");
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			for (Load load : Load.values()) {
+				int count = load == Load.BLOCKING ? Math.max(1, tasks / BLOCKING_SHARE) : tasks;
+				double simple = measure(WorkQueue::new, threads, count, load);
+				double stealing = measure(WorkStealingQueue::new, threads, count, load);
+				System.out.printf("%-8d %-9s %18.0f %18.0f%n", threads, load.name().toLowerCase(), simple, stealing);
+			}
+		}
+	}
+
+	/**
+	 * The kinds of load to measure.
+	 */
+	public enum Load {
+		/** Tiny tasks all submitted by the main thread */
+		FLAT,
+
+		/** Tiny tasks mostly submitted by other tasks */
+		NESTED,
+
+		/** Tasks that each block for a moment */
+		BLOCKING
+	}
+
+	/**
+	 * Measures the best rate of one kind of queue over a few rounds.
+	 *
+	 * @param queues creates the queue for a number of threads
+	 * @param threads the number of worker threads
+	 * @param tasks the number of tasks to run each round
+	 * @param load the kind of tasks to run
+	 * @return the best number of tasks per second
+	 */
+	public static double measure(IntFunction<? extends WorkQueue> queues, int threads, int tasks, Load load) {
+		WorkQueue queue = queues.apply(threads);
+		LongAdder done = new LongAdder();
+		long best = Long.MAX_VALUE;
+
+		try {
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+
+				if (load == Load.NESTED) {
+					queue.execute(new Spawn(queue, done, tasks));
+				} else {
+					Runnable task = load == Load.FLAT ? done::increment : WorkQueueBenchmark::block;
+					for (int i = 0; i < tasks; i++) {
+						queue.execute(task);
+					}
+				}
+
+				queue.finish();
+				best = Math.min(best, System.nanoTime() - start);
+			}
+		} finally {
+			queue.join();
+		}
+
+		return tasks / (best / 1e9);
+	}
+
+	/**
+	 * Blocks the calling thread for a moment, like waiting on a disk would.
+	 */
+	private static void block() {
+		try {
+			TimeUnit.MICROSECONDS.sleep(BLOCK_MICROS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A task that splits its share of the tasks between a few more tasks, so
+	 * most tasks are submitted by the workers themselves.
+	 */
+	private static class Spawn implements Runnable {
+		/** The queue to submit to */
+		private final WorkQueue queue;
+
+		/** Counts the tasks run */
+		private final LongAdder done;
+
+		/** The number of tasks this one stands for, counting itself */
+		private final int count;
+
+		/**
+		 * Initializes a task.
+		 *
+		 * @param queue the queue to submit to
+		 * @param done counts the tasks run
+		 * @param count the number of tasks this one stands for, counting itself
+		 */
+		public Spawn(WorkQueue queue, LongAdder done, int count) {
+			this.queue = queue;
+			this.done = done;
+			this.count = count;
+		}
+
+		@Override
+		public void run() {
+			done.increment();
+
+			int left = count - 1;
+			for (int i = 0; i < FANOUT && left > 0; i++) {
+				int share = (left + FANOUT - 1 - i) / (FANOUT - i);
+				queue.execute(new Spawn(queue, done, share));
+				left -= share;
+			}
+		}
+	}
+}
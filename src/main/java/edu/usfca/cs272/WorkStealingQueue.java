@@ -0,0 +1,344 @@
+package edu.usfca.cs272;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A work queue where every worker has its own deque of tasks instead of all of
+ * them sharing one locked list. Tasks submitted by a worker, such as the
+ * subdirectories found while walking a directory, go on that worker's deque and
+ * are run newest first, while tasks from any other thread go on a shared queue
+ * and are run in the order they were submitted. A worker with nothing left takes
+ * from the shared queue and then steals the oldest task of another worker.
+ *
+ * None of the queues are locked. Idle workers park themselves on a list and a
+ * new task wakes exactly one of them, rather than every waiting worker waking up
+ * to race for the same task. The pending count is atomic, and only reaching
+ * zero takes the lock that {@link #finish()} waits on.
+ *
+ * The deques have no lanes, so the weights of the priorities do not apply here.
+ * Urgent tasks from outside the workers skip ahead of everything else instead,
+ * and wait times and deadlines work the same as in the simple queue.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class WorkStealingQueue extends WorkQueue {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** The workers, each with its own deque */
+	private final Worker[] workers;
+
+	/** Tasks submitted from outside the workers, oldest first */
+	private final ConcurrentLinkedQueue<Runnable> submitted;
+
+	/** Urgent tasks submitted from outside the workers, taken before any other */
+	private final ConcurrentLinkedQueue<Runnable> urgent;
+
+	/** The workers that are parked or about to park */
+	private final ConcurrentLinkedQueue<Worker> idle;
+
+	/** The number of tasks waiting in any of the queues */
+	private final AtomicInteger queued;
+
+	/** The number of tasks submitted but not finished yet */
+	private final AtomicInteger pending;
+
+	/** The lock that finish waits on for the pending count to reach zero */
+	private final Object pendingLock;
+
+	/** Used to signal the workers should terminate. */
+	private volatile boolean shutdown;
+
+	/**
+	 * Starts a work-stealing queue with the default number of threads.
+	 */
+	public WorkStealingQueue() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * Starts a work-stealing queue with the specified number of threads.
+	 *
+	 * @param threads number of worker threads; should be at least 1
+	 */
+	public WorkStealingQueue(int threads) {
+		this(threads, UNBOUNDED, Overflow.BLOCK);
+	}
+
+	/**
+	 * Starts a work-stealing queue with the specified number of threads that
+	 * holds at most some number of waiting tasks across all of its deques.
+	 *
+	 * @param threads number of worker threads; should be at least 1
+	 * @param capacity the most tasks that may wait for a worker, or
+	 *   {@link #UNBOUNDED}
+	 * @param overflow what to do with a task submitted while the queue is full
+	 */
+	public WorkStealingQueue(int threads, int capacity, Overflow overflow) {
+		// none of the workers of the simple queue are started
+		super(0, capacity, overflow);
+
+		this.workers = new Worker[threads];
+		this.submitted = new ConcurrentLinkedQueue<>();
+		this.urgent = new ConcurrentLinkedQueue<>();
+		this.idle = new ConcurrentLinkedQueue<>();
+		this.queued = new AtomicInteger();
+		this.pending = new AtomicInteger();
+		this.pendingLock = new Object();
+		this.shutdown = false;
+
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i);
+		}
+
+		// every deque has to exist before any worker tries to steal from it
+		for (Worker worker : workers) {
+			worker.start();
+		}
+	}
+
+	@Override
+	public void execute(Runnable task, Priority priority, Duration maxWait) {
+		Runnable timed = timed(task, priority, maxWait);
+
+		if (!admit(timed)) {
+			return;
+		}
+
+		pending.incrementAndGet();
+		queued.incrementAndGet();
+
+		if (priority == Priority.HIGH && !isWorker()) {
+			urgent.add(timed);
+		} else if (isWorker()) {
+			((Worker) Thread.currentThread()).deque.addFirst(timed);
+		} else {
+			submitted.add(timed);
+		}
+
+		signal();
+	}
+
+	@Override
+	protected boolean isWorker() {
+		Thread current = Thread.currentThread();
+		return current instanceof Worker && ((Worker) current).owner() == this;
+	}
+
+	/**
+	 * Wakes up one idle worker, if there is one. Workers that found a task on
+	 * their own since they went on the list are skipped, they are already busy.
+	 */
+	private void signal() {
+		Worker worker;
+
+		while ((worker = idle.poll()) != null) {
+			if (worker.parked.compareAndSet(true, false)) {
+				LockSupport.unpark(worker);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Marks one task as finished, waking up anyone waiting on the last one.
+	 */
+	private void decrementPending() {
+		if (pending.decrementAndGet() <= 0) {
+			synchronized (pendingLock) {
+				pendingLock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void finish() {
+		synchronized (pendingLock) {
+			while (pending.get() > 0) {
+				try {
+					pendingLock.wait();
+				} catch (InterruptedException e) {
+					System.err.println("Warning: work queue is interrupted while waiting");
+					log.catching(Level.WARN, e);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void join() {
+		try {
+			finish();
+			shutdown();
+
+			for (Worker worker : workers) {
+				worker.join();
+			}
+		}
+		catch (InterruptedException e) {
+			System.err.println("Warning: Work queue interrupted while joining.");
+			log.catching(Level.WARN, e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+
+		for (Worker worker : workers) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	/**
+	 * Not supported, the number of deques is fixed.
+	 *
+	 * @param min the fewest workers to keep
+	 * @param max the most workers to have
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void adapt(int min, int max) {
+		throw new UnsupportedOperationException("Only the simple work queue can be resized.");
+	}
+
+	@Override
+	public int size() {
+		return workers.length;
+	}
+
+	/**
+	 * Runs urgent tasks, then tasks from its own deque, then the shared queue,
+	 * then the deques of the other workers, and parks when there are none left anywhere.
+	 */
+	private class Worker extends Thread {
+		/** The tasks submitted by this worker, newest first */
+		private final ConcurrentLinkedDeque<Runnable> deque;
+
+		/** Whether this worker is on the idle list */
+		private final AtomicBoolean parked;
+
+		/** The position of this worker, so it does not steal from itself */
+		private final int index;
+
+		/**
+		 * Initializes a worker thread with a custom name.
+		 *
+		 * @param index the position of this worker
+		 */
+		public Worker(int index) {
+			setName("Worker" + getName());
+			this.deque = new ConcurrentLinkedDeque<>();
+			this.parked = new AtomicBoolean(false);
+			this.index = index;
+		}
+
+		/**
+		 * Returns the queue this worker belongs to.
+		 *
+		 * @return the owning queue
+		 */
+		public WorkStealingQueue owner() {
+			return WorkStealingQueue.this;
+		}
+
+		/**
+		 * Takes the next task to run from anywhere, preferring this worker's own.
+		 *
+		 * @return the task, or null if every queue looked empty
+		 */
+		private Runnable take() {
+			Runnable task = urgent.poll();
+
+			if (task == null) {
+				task = deque.pollFirst();
+			}
+
+			if (task == null) {
+				task = submitted.poll();
+			}
+
+			if (task == null && workers.length > 1) {
+				// start at a random victim so thieves spread out
+				int start = ThreadLocalRandom.current().nextInt(workers.length);
+
+				for (int i = 0; i < workers.length && task == null; i++) {
+					int victim = (start + i) % workers.length;
+
+					if (victim != index) {
+						task = workers[victim].deque.pollLast();
+					}
+				}
+			}
+
+			if (task != null) {
+				taken();
+
+				if (queued.decrementAndGet() > 0) {
+					// pass the wake up on, this worker may have taken the task meant for another
+					signal();
+				}
+			}
+
+			return task;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Runnable task = take();
+
+				if (task == null) {
+					if (shutdown) {
+						break;
+					}
+
+					if (parked.compareAndSet(false, true)) {
+						idle.add(this);
+					}
+
+					// a task added before this worker was on the list has to be seen here
+					task = take();
+
+					if (task == null) {
+						if (!shutdown) {
+							LockSupport.park(this);
+						}
+						continue;
+					}
+				}
+
+				if (parked.compareAndSet(true, false)) {
+					// found a task without being woken up, so a signal must not pick this worker
+					idle.remove(this);
+				}
+
+				try {
+					task.run();
+				}
+				catch (RuntimeException e) {
+					// catch runtime exceptions to avoid leaking threads
+					System.err.printf("Error: %s encountered an exception while running.%n", this.getName());
+					log.catching(Level.ERROR, e);
+				} finally {
+					decrementPending();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package edu.usfca.cs272;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a sharded index keeps every location, including the ones whose
+ * words all land in shards other than the first.
+ *
+ * @author Anton Lim
+ * @author CS 272 Software Development (University of San Francisco)
+ * @version Fall 2023
+ */
+public class ShardedInvertedIndexTest {
+	/** The number of shards to split the words over */
+	private static final int SHARDS = 4;
+
+	/** One word per file, enough of them that every shard gets some */
+	private static final List<String> WORDS = List.of("apple", "banana", "cherry", "date", "elder", "fig", "grape", "kiwi", "lemon", "mango");
+
+	/**
+	 * Makes an index where each file has a single word, so most files have no
+	 * word in shard 0.
+	 *
+	 * @return the index
+	 */
+	private static InvertedIndex oneWordPerFile() {
+		InvertedIndex index = new InvertedIndex();
+		for (String word : WORDS) {
+			index.add(word, word + ".txt", 1);
+		}
+		return index;
+	}
+
+	/**
+	 * Merging a whole index registers every location, not only the ones of
+	 * shard 0, so each file is still found by a search for its word.
+	 */
+	@Test
+	public void testAddDistinctKeepsEveryLocation() {
+		InvertedIndex index = oneWordPerFile();
+		ShardedInvertedIndex sharded = new ShardedInvertedIndex(null, SHARDS, false);
+		sharded.addDistinct(index);
+
+		assertEquals(index.getLocations(), sharded.getLocations());
+
+		for (String word : WORDS) {
+			List<InvertedIndex.FileResult> results = sharded.search(Set.of(word), false);
+
+			assertEquals(1, results.size(), word);
+			assertEquals(word + ".txt", results.get(0).getWhere(), word);
+			assertEquals(1, results.get(0).getCount(), word);
+		}
+	}
+
+	/**
+	 * A partial search over every word finds every file, with the same counts as
+	 * the index before it was sharded.
+	 */
+	@Test
+	public void testAddDistinctMatchesUnsharded() {
+		InvertedIndex index = oneWordPerFile();
+		ShardedInvertedIndex sharded = new ShardedInvertedIndex(null, SHARDS, false);
+		sharded.addDistinct(index);
+
+		Set<String> prefixes = new TreeSet<>();
+		for (String word : WORDS) {
+			prefixes.add(word.substring(0, 1));
+		}
+
+		assertEquals(index.searchCounts(prefixes, true), sharded.searchCounts(prefixes, true));
+		assertEquals(index.search(prefixes, true).size(), sharded.search(prefixes, true).size());
+	}
+}